@@ -1,6 +1,7 @@
 plugins {
     java
     id("com.gradleup.shadow") version "8.3.6"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 group = "com.yesidodo.mcstats"
@@ -20,6 +21,17 @@ repositories {
 dependencies {
     compileOnly("io.papermc.paper:paper-api:1.20.6-R0.1-SNAPSHOT")
     implementation("com.github.oshi:oshi-core:6.6.5")
+
+    testImplementation("io.papermc.paper:paper-api:1.20.6-R0.1-SNAPSHOT")
+    testImplementation(platform("org.junit:junit-bom:5.11.3"))
+    testImplementation("org.junit.jupiter:junit-jupiter")
+    testRuntimeOnly("org.junit.platform:junit-platform-launcher")
+
+    jmh("io.papermc.paper:paper-api:1.20.6-R0.1-SNAPSHOT")
+}
+
+jmh {
+    jmhVersion.set("1.37")
 }
 
 tasks {
@@ -37,6 +49,13 @@ tasks {
 
     shadowJar {
         archiveClassifier.set("")
+        manifest {
+            attributes("Main-Class" to "com.yesidodo.mcstats.plugin.RelayMain")
+        }
+    }
+
+    test {
+        useJUnitPlatform()
     }
 
     jar {
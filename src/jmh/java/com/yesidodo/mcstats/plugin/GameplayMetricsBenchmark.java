@@ -0,0 +1,142 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginManager;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+// Per-event cost of the gameplay handlers as the plugin manager calls them: the registered executor, the source's
+// record() (MOVE includes its distance math) and the slot counter add.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class GameplayMetricsBenchmark {
+    private static final int PLAYERS = 200;
+
+    private StatsQueue queue;
+    private GameplayMetrics metrics;
+    private EventExecutor move;
+    private EventExecutor blockBreak;
+    private PlayerMoveEvent[] moves;
+    private BlockBreakEvent[] breaks;
+
+    @Setup
+    public void setUp() {
+        queue = new StatsQueue(1 << 16, OverflowPolicy.COALESCE, true, Set.of(), new StatDictionary());
+        PlayerSlots slots = new PlayerSlots(256, queue.dictionary());
+        metrics = new GameplayMetrics(queue, slots, List.of(
+                new GameplayMetrics.Binding(GameplaySource.BLOCK_BREAK, "blocks_broken"),
+                new GameplayMetrics.Binding(GameplaySource.MOVE, "distance_cm")
+        ));
+        Map<Class<? extends Event>, EventExecutor> executors = register(metrics);
+        move = executors.get(PlayerMoveEvent.class);
+        blockBreak = executors.get(BlockBreakEvent.class);
+
+        moves = new PlayerMoveEvent[PLAYERS];
+        breaks = new BlockBreakEvent[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            Player player = player(new UUID(0L, i + 1L));
+            slots.assign(player.getUniqueId());
+            moves[i] = new PlayerMoveEvent(player, new Location(null, i, 64.0, 0.0), new Location(null, i + 0.3, 64.0, 0.1));
+            // The handler never looks at the block.
+            breaks[i] = new BlockBreakEvent(null, player);
+        }
+    }
+
+    // Keeps the counters and the queue from growing across iterations, as the periodic flush would.
+    @TearDown(Level.Iteration)
+    public void flush() {
+        metrics.flush();
+        while (!queue.drain(4096).isEmpty()) {
+            // Discard.
+        }
+    }
+
+    @Benchmark
+    public void move(Cursor cursor) throws EventException {
+        move.execute(metrics, moves[cursor.next()]);
+    }
+
+    @Benchmark
+    public void blockBreak(Cursor cursor) throws EventException {
+        blockBreak.execute(metrics, breaks[cursor.next()]);
+    }
+
+    // Several event threads, as on Folia, adding into the shared counter array.
+    @Benchmark
+    @Threads(4)
+    public void moveFourThreads(Cursor cursor) throws EventException {
+        move.execute(metrics, moves[cursor.next()]);
+    }
+
+    private static Map<Class<? extends Event>, EventExecutor> register(GameplayMetrics metrics) {
+        Map<Class<? extends Event>, EventExecutor> executors = new HashMap<>();
+        PluginManager pluginManager = (PluginManager) Proxy.newProxyInstance(
+                PluginManager.class.getClassLoader(),
+                new Class<?>[]{PluginManager.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("registerEvent")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    Class<? extends Event> type = (Class<? extends Event>) args[0];
+                    executors.put(type, (EventExecutor) args[3]);
+                    return null;
+                }
+        );
+        metrics.register(null, pluginManager);
+        return executors;
+    }
+
+    private static Player player(UUID uuid) {
+        return (Player) Proxy.newProxyInstance(
+                Player.class.getClassLoader(),
+                new Class<?>[]{Player.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "getUniqueId" -> uuid;
+                    case "hashCode" -> uuid.hashCode();
+                    case "equals" -> proxy == args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                }
+        );
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next;
+
+        int next() {
+            int index = next;
+            next = index + 1 == PLAYERS ? 0 : index + 1;
+            return index;
+        }
+    }
+}
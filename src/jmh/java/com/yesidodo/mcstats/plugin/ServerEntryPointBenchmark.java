@@ -0,0 +1,82 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+
+// The ways ServerCapabilities could call a server entry point such as getTPS(): plain reflection, a handle in an
+// instance field (what it used before), a handle in a static final (what it uses now) and a direct call.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServerEntryPointBenchmark {
+    private static final TpsSource SOURCE = new TpsSource();
+    private static final MethodHandle CONSTANT_HANDLE = bind(SOURCE);
+
+    private TpsSource source;
+    private Method method;
+    private MethodHandle instanceHandle;
+
+    @Setup
+    public void setUp() throws NoSuchMethodException {
+        source = SOURCE;
+        method = TpsSource.class.getMethod("getTPS");
+        instanceHandle = bind(source);
+    }
+
+    @Benchmark
+    public double[] direct() {
+        return SOURCE.getTPS();
+    }
+
+    @Benchmark
+    public double[] reflective() throws ReflectiveOperationException {
+        return (double[]) method.invoke(source);
+    }
+
+    @Benchmark
+    public double[] instanceHandle() throws Throwable {
+        return (double[]) instanceHandle.invokeExact();
+    }
+
+    @Benchmark
+    public double[] constantHandle() throws Throwable {
+        return (double[]) CONSTANT_HANDLE.invokeExact();
+    }
+
+    // Bound and adapted the way ServerCapabilities binds server getters.
+    private static MethodHandle bind(TpsSource source) {
+        try {
+            return MethodHandles.publicLookup()
+                    .findVirtual(TpsSource.class, "getTPS", MethodType.methodType(double[].class))
+                    .bindTo(source)
+                    .asType(MethodType.methodType(double[].class));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static final class TpsSource {
+        private final double[] tps = {20.0, 20.0, 20.0};
+
+        public double[] getTPS() {
+            return tps;
+        }
+    }
+}
@@ -0,0 +1,190 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+// One task on the plugin executor that decides when each pipeline is flushed, instead of a repeating scheduler task per pipeline.
+public final class AdaptiveFlusher {
+    private final Logger logger;
+    private final Executor executor;
+    private final long checkNanos;
+    private final List<Lane> lanes = new ArrayList<>();
+    private final List<PeriodicTask> tasks = new ArrayList<>();
+    private volatile boolean running;
+    private volatile Thread thread;
+    private CountDownLatch finished;
+
+    public AdaptiveFlusher(Logger logger, Executor executor, long checkIntervalMs) {
+        this.logger = logger;
+        this.executor = executor;
+        this.checkNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(10L, checkIntervalMs));
+    }
+
+    // beforeFlush moves data that the queue cannot see (e.g. per-player counters) into it, at least once per maxAge.
+    public void addLane(String name, DeliveryPipeline<?> pipeline, IntSupplier depth, Runnable beforeFlush, long maxAgeMs) {
+        lanes.add(new Lane(name, pipeline, depth, beforeFlush, TimeUnit.MILLISECONDS.toNanos(Math.max(1L, maxAgeMs))));
+    }
+
+    public void addPeriodic(String name, Runnable task, long periodMs) {
+        tasks.add(new PeriodicTask(name, task, TimeUnit.MILLISECONDS.toNanos(Math.max(1L, periodMs))));
+    }
+
+    public synchronized void start() {
+        if (running) {
+            return;
+        }
+        running = true;
+        long now = System.nanoTime();
+        for (Lane lane : lanes) {
+            lane.lastFlushNanos = now;
+        }
+        for (PeriodicTask task : tasks) {
+            task.dueNanos = now + task.periodNanos;
+        }
+        CountDownLatch latch = new CountDownLatch(1);
+        this.finished = latch;
+        executor.execute(() -> run(latch));
+    }
+
+    public synchronized void stop() {
+        running = false;
+        if (finished == null) {
+            return;
+        }
+        // run() publishes its thread before checking running, so either it sees the flag or it gets unparked.
+        Thread current = thread;
+        if (current != null) {
+            LockSupport.unpark(current);
+        }
+        try {
+            finished.await(1000L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        finished = null;
+    }
+
+    private void run(CountDownLatch latch) {
+        thread = Thread.currentThread();
+        thread.setName("MCStats-Flusher");
+        try {
+            loop();
+        } finally {
+            thread = null;
+            latch.countDown();
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            long now = System.nanoTime();
+            long next = now + checkNanos;
+            for (PeriodicTask task : tasks) {
+                if (now - task.dueNanos >= 0L) {
+                    task.dueNanos = now + task.periodNanos;
+                    runSafely(task.name, task.task);
+                }
+                next = earlier(next, task.dueNanos);
+            }
+            for (Lane lane : lanes) {
+                lane.check(now);
+                next = lane.nextDeadline(next);
+            }
+
+            long sleep = next - System.nanoTime();
+            if (sleep > 0L && running) {
+                LockSupport.parkNanos(this, sleep);
+            }
+        }
+    }
+
+    // nanoTime values may wrap, so they are only ever compared by difference.
+    private static long earlier(long a, long b) {
+        return b - a < 0L ? b : a;
+    }
+
+    private void runSafely(String name, Runnable task) {
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "MCStats " + name + " failed", e);
+        }
+    }
+
+    private final class Lane {
+        private final String name;
+        private final DeliveryPipeline<?> pipeline;
+        private final IntSupplier depth;
+        private final Runnable beforeFlush;
+        private final long maxAgeNanos;
+        private long lastFlushNanos;
+        // When the queue was first seen non-empty since the last flush; 0 while it is empty.
+        private long pendingSinceNanos;
+
+        private Lane(String name, DeliveryPipeline<?> pipeline, IntSupplier depth, Runnable beforeFlush, long maxAgeNanos) {
+            this.name = name;
+            this.pipeline = pipeline;
+            this.depth = depth;
+            this.beforeFlush = beforeFlush;
+            this.maxAgeNanos = maxAgeNanos;
+        }
+
+        private void check(long now) {
+            int pending = depth.getAsInt();
+            if (pending == 0) {
+                pendingSinceNanos = 0L;
+            } else if (pendingSinceNanos == 0L) {
+                pendingSinceNanos = now;
+            }
+
+            boolean full = pending >= pipeline.batchSize();
+            boolean aged = pendingSinceNanos != 0L && now - pendingSinceNanos >= maxAgeNanos;
+            boolean hiddenDue = beforeFlush != null && now - lastFlushNanos >= maxAgeNanos;
+            if (!full && !aged && !hiddenDue) {
+                return;
+            }
+
+            runSafely(name + " flush", () -> {
+                if (hiddenDue || aged) {
+                    if (beforeFlush != null) {
+                        beforeFlush.run();
+                    }
+                    lastFlushNanos = now;
+                }
+                pipeline.pump();
+            });
+            // Whatever the in-flight window could not take yet starts a new age window.
+            pendingSinceNanos = depth.getAsInt() > 0 ? now : 0L;
+        }
+
+        private long nextDeadline(long next) {
+            if (beforeFlush != null) {
+                next = earlier(next, lastFlushNanos + maxAgeNanos);
+            }
+            if (pendingSinceNanos != 0L) {
+                next = earlier(next, pendingSinceNanos + maxAgeNanos);
+            }
+            return next;
+        }
+    }
+
+    private static final class PeriodicTask {
+        private final String name;
+        private final Runnable task;
+        private final long periodNanos;
+        private long dueNanos;
+
+        private PeriodicTask(String name, Runnable task, long periodNanos) {
+            this.name = name;
+            this.task = task;
+            this.periodNanos = periodNanos;
+        }
+    }
+}
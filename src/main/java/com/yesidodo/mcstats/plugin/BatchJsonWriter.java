@@ -0,0 +1,94 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.List;
+
+public final class BatchJsonWriter {
+    private BatchJsonWriter() {
+    }
+
+    public static void writeEvents(PayloadBuffer out, List<StatEvent> events, StatDictionary dictionary) {
+        out.ensureCapacity(16 + events.size() * 110);
+        out.writeAscii("{\"events\":[");
+        for (int i = 0; i < events.size(); i++) {
+            StatEvent e = events.get(i);
+            if (i > 0) {
+                out.writeByte(',');
+            }
+            out.writeAscii("{\"uuid\":\"")
+                    .writeBytes(dictionary.uuidAscii(e.playerId()))
+                    .writeByte('"');
+            // Set for events forwarded by a relay; the others belong to the request's server.
+            String serverId = dictionary.serverId(e.playerId());
+            if (serverId != null) {
+                out.writeAscii(",\"serverId\":").writeJsonString(serverId);
+            }
+            out.writeAscii(",\"metric\":")
+                    .writeJsonString(dictionary.metricName(e.metricId()))
+                    .writeAscii(",\"delta\":")
+                    .writeLong(e.delta())
+                    .writeAscii(",\"timestampUtc\":")
+                    .writeLong(e.timestampUtc())
+                    .writeByte('}');
+        }
+        out.writeAscii("]}");
+    }
+
+    public static void writeTelemetry(PayloadBuffer out, List<TelemetrySample> samples) {
+        out.ensureCapacity(16 + samples.size() * 480);
+        out.writeAscii("{\"samples\":[");
+        for (int i = 0; i < samples.size(); i++) {
+            TelemetrySample s = samples.get(i);
+            if (i > 0) {
+                out.writeByte(',');
+            }
+
+            out.writeAscii("{\"serverId\":")
+                    .writeJsonString(s.serverId())
+                    .writeAscii(",\"timestampUtc\":")
+                    .writeLong(s.timestampUtc());
+            for (TelemetryFields.Field field : TelemetryFields.ALL) {
+                Number value = s.get(field);
+                if (value != null) {
+                    out.writeAscii(",\"").writeAscii(field.name()).writeAscii("\":").writeNumber(value);
+                }
+            }
+            if (!s.sections().isEmpty()) {
+                writeSections(out, s.sections());
+            }
+            out.writeByte('}');
+        }
+        out.writeAscii("]}");
+    }
+
+    private static void writeSections(PayloadBuffer out, List<TelemetrySection> sections) {
+        out.writeAscii(",\"sections\":[");
+        for (int i = 0; i < sections.size(); i++) {
+            TelemetrySection section = sections.get(i);
+            if (i > 0) {
+                out.writeByte(',');
+            }
+
+            out.writeAscii("{\"name\":").writeJsonString(section.name()).writeAscii(",\"columns\":[");
+            for (int c = 0; c < section.columns().size(); c++) {
+                if (c > 0) {
+                    out.writeByte(',');
+                }
+                out.writeJsonString(section.columns().get(c));
+            }
+            out.writeAscii("],\"rows\":[");
+            for (int r = 0; r < section.rows().size(); r++) {
+                TelemetryRow row = section.rows().get(r);
+                if (r > 0) {
+                    out.writeByte(',');
+                }
+                out.writeByte('[').writeJsonString(row.key());
+                for (double value : row.values()) {
+                    out.writeByte(',').writeDouble(value);
+                }
+                out.writeByte(']');
+            }
+            out.writeAscii("]}");
+        }
+        out.writeByte(']');
+    }
+}
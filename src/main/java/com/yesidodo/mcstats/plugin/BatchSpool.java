@@ -0,0 +1,422 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+public final class BatchSpool<T> implements Closeable {
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final String SEGMENT_SUFFIX = ".seg";
+    // Item counts are never negative, so a negative first word marks a record that starts with its batch sequence.
+    private static final int SEQUENCE_MARKER = -1;
+
+    private final Path directory;
+    private final String name;
+    private final SpoolCodec<T> codec;
+    private final long segmentBytes;
+    private final long maxBytes;
+    private final boolean fsync;
+    private final TreeMap<Long, Long> segmentSizes = new TreeMap<>();
+    private final ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_BYTES);
+    private FileChannel writer;
+    private long writerSegmentId = -1L;
+    private FileChannel reader;
+    private long readerSegmentId = -1L;
+    private final TreeMap<Position, Position> acked = new TreeMap<>();
+    private Position committed = new Position(0L, 0L);
+    private Position readAhead = committed;
+    private long totalBytes;
+    private long droppedSegments;
+
+    private BatchSpool(Path directory, String name, SpoolCodec<T> codec, long segmentBytes, long maxBytes, boolean fsync) {
+        this.directory = directory;
+        this.name = name;
+        this.codec = codec;
+        this.segmentBytes = Math.max(64L * 1024L, segmentBytes);
+        this.maxBytes = Math.max(this.segmentBytes, maxBytes);
+        this.fsync = fsync;
+    }
+
+    public static <T> BatchSpool<T> open(
+            Path directory,
+            String name,
+            SpoolCodec<T> codec,
+            long segmentBytes,
+            long maxBytes,
+            boolean fsync
+    ) throws IOException {
+        Files.createDirectories(directory);
+        BatchSpool<T> spool = new BatchSpool<>(directory, name, codec, segmentBytes, maxBytes, fsync);
+        spool.recover();
+        return spool;
+    }
+
+    // Returns how many segments with unsent data had to be discarded to stay within the disk limit.
+    public synchronized int append(List<T> batch, long sequence) throws IOException {
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        byte[] payload = encode(batch, sequence);
+        long recordBytes = RECORD_HEADER_BYTES + (long) payload.length;
+        if (recordBytes > maxBytes) {
+            throw new IOException("Batch of " + recordBytes + " bytes exceeds spool limit of " + maxBytes + " bytes");
+        }
+
+        long writerSize = writer == null ? 0L : segmentSizes.get(writerSegmentId);
+        if (writer == null || (writerSize > 0L && writerSize + recordBytes > segmentBytes)) {
+            rollSegment();
+        }
+        int dropped = enforceLimit(recordBytes);
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        ByteBuffer record = ByteBuffer.allocate((int) recordBytes);
+        record.putInt(payload.length).putInt((int) crc.getValue()).put(payload).flip();
+        while (record.hasRemaining()) {
+            writer.write(record);
+        }
+        if (fsync) {
+            writer.force(false);
+        }
+
+        segmentSizes.merge(writerSegmentId, recordBytes, Long::sum);
+        totalBytes += recordBytes;
+        return dropped;
+    }
+
+    public synchronized SpoolBatch<T> poll() throws IOException {
+        while (true) {
+            Long segmentId = segmentSizes.ceilingKey(readAhead.segmentId());
+            if (segmentId == null) {
+                return null;
+            }
+            if (segmentId != readAhead.segmentId()) {
+                readAhead = new Position(segmentId, 0L);
+            }
+
+            long segmentSize = segmentSizes.get(segmentId);
+            if (readAhead.offset() >= segmentSize) {
+                if (segmentId == writerSegmentId) {
+                    return null;
+                }
+                readAhead = new Position(segmentId + 1L, 0L);
+                continue;
+            }
+
+            Position start = readAhead;
+            Position alreadyAcked = acked.get(start);
+            if (alreadyAcked != null) {
+                readAhead = alreadyAcked;
+                continue;
+            }
+
+            SpoolBatch<T> batch = readRecord(start, segmentSize);
+            if (batch != null) {
+                readAhead = batch.end();
+                return batch;
+            }
+            // Torn or corrupt tail, e.g. after a crash mid-write: treat the rest of the segment as consumed.
+            Position segmentEnd = new Position(segmentId, segmentSize);
+            readAhead = segmentEnd;
+            markAcked(start, segmentEnd);
+        }
+    }
+
+    public synchronized void ack(SpoolBatch<T> batch) throws IOException {
+        markAcked(batch.start(), batch.end());
+    }
+
+    public synchronized void rewind() {
+        readAhead = committed;
+    }
+
+    public synchronized boolean hasUnread() {
+        for (Map.Entry<Long, Long> segment : segmentSizes.tailMap(readAhead.segmentId(), true).entrySet()) {
+            long start = segment.getKey() == readAhead.segmentId() ? readAhead.offset() : 0L;
+            if (segment.getValue() > start) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public synchronized long sizeBytes() {
+        return totalBytes;
+    }
+
+    // Total since the spool was opened.
+    public synchronized long droppedSegments() {
+        return droppedSegments;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closeReader();
+        if (writer != null) {
+            writer.force(true);
+            writer.close();
+            writer = null;
+        }
+    }
+
+    private SpoolBatch<T> readRecord(Position start, long segmentSize) throws IOException {
+        long offset = start.offset();
+        if (offset + RECORD_HEADER_BYTES > segmentSize) {
+            return null;
+        }
+
+        FileChannel channel = readerFor(start.segmentId());
+        header.clear();
+        readFully(channel, header, offset);
+        header.flip();
+        int length = header.getInt();
+        int expectedCrc = header.getInt();
+        if (length <= 0 || offset + RECORD_HEADER_BYTES + length > segmentSize) {
+            return null;
+        }
+
+        ByteBuffer payload = ByteBuffer.allocate(length);
+        readFully(channel, payload, offset + RECORD_HEADER_BYTES);
+        CRC32 crc = new CRC32();
+        crc.update(payload.array(), 0, length);
+        if ((int) crc.getValue() != expectedCrc) {
+            return null;
+        }
+
+        try {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+            int count = in.readInt();
+            long sequence = 0L;
+            if (count == SEQUENCE_MARKER) {
+                sequence = in.readLong();
+                count = in.readInt();
+            }
+            List<T> items = decode(in, count);
+            Position end = new Position(start.segmentId(), offset + RECORD_HEADER_BYTES + length);
+            return new SpoolBatch<>(items, sequence, start, end);
+        } catch (IOException ignored) {
+            return null;
+        }
+    }
+
+    private byte[] encode(List<T> batch, long sequence) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + batch.size() * 48);
+        DataOutputStream out = new DataOutputStream(bytes);
+        if (sequence != 0L) {
+            out.writeInt(SEQUENCE_MARKER);
+            out.writeLong(sequence);
+        }
+        out.writeInt(batch.size());
+        for (T item : batch) {
+            codec.write(out, item);
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private List<T> decode(DataInputStream in, int count) throws IOException {
+        List<T> items = new ArrayList<>(Math.max(0, count));
+        for (int i = 0; i < count; i++) {
+            items.add(codec.read(in));
+        }
+        return items;
+    }
+
+    private void recover() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, name + "-*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                Long segmentId = parseSegmentId(path);
+                if (segmentId != null) {
+                    long size = Files.size(path);
+                    segmentSizes.put(segmentId, size);
+                    totalBytes += size;
+                }
+            }
+        }
+
+        Path checkpoint = checkpointPath();
+        if (Files.exists(checkpoint)) {
+            ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(checkpoint));
+            if (buffer.remaining() >= 16) {
+                committed = new Position(buffer.getLong(), buffer.getLong());
+            }
+        } else if (!segmentSizes.isEmpty()) {
+            committed = new Position(segmentSizes.firstKey(), 0L);
+        }
+        readAhead = committed;
+
+        while (!segmentSizes.isEmpty() && segmentSizes.firstKey() < committed.segmentId()) {
+            deleteSegment(segmentSizes.firstKey());
+        }
+    }
+
+    private void rollSegment() throws IOException {
+        if (writer != null) {
+            writer.force(true);
+            writer.close();
+        }
+
+        long nextId = segmentSizes.isEmpty() ? committed.segmentId() + 1L : segmentSizes.lastKey() + 1L;
+        Path path = segmentPath(nextId);
+        writer = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+        writerSegmentId = nextId;
+        segmentSizes.put(nextId, writer.size());
+        totalBytes += writer.size();
+    }
+
+    private int enforceLimit(long incomingBytes) throws IOException {
+        int dropped = 0;
+        boolean cursorMoved = false;
+        while (totalBytes + incomingBytes > maxBytes && segmentSizes.firstKey() != writerSegmentId) {
+            long oldest = segmentSizes.firstKey();
+            if (oldest >= committed.segmentId()) {
+                dropped++;
+                droppedSegments++;
+            }
+            deleteSegment(oldest);
+
+            Position next = new Position(oldest + 1L, 0L);
+            acked.headMap(next).clear();
+            if (committed.compareTo(next) < 0) {
+                committed = next;
+                cursorMoved = true;
+            }
+            if (readAhead.compareTo(next) < 0) {
+                readAhead = next;
+            }
+        }
+        if (cursorMoved) {
+            writeCheckpoint();
+        }
+        return dropped;
+    }
+
+    private void markAcked(Position start, Position end) throws IOException {
+        if (end.compareTo(committed) <= 0) {
+            return;
+        }
+        acked.put(start, end);
+
+        boolean moved = false;
+        while (true) {
+            Long segmentId = segmentSizes.ceilingKey(committed.segmentId());
+            if (segmentId == null) {
+                break;
+            }
+            if (segmentId != committed.segmentId()) {
+                committed = new Position(segmentId, 0L);
+                moved = true;
+            }
+            if (committed.offset() >= segmentSizes.get(segmentId) && segmentId != writerSegmentId) {
+                deleteSegment(segmentId);
+                committed = new Position(segmentId + 1L, 0L);
+                moved = true;
+                continue;
+            }
+
+            Position next = acked.remove(committed);
+            if (next == null) {
+                break;
+            }
+            committed = next;
+            moved = true;
+        }
+
+        acked.headMap(committed).clear();
+        if (moved) {
+            writeCheckpoint();
+        }
+    }
+
+    private void deleteSegment(long segmentId) throws IOException {
+        if (segmentId == readerSegmentId) {
+            closeReader();
+        }
+        Long size = segmentSizes.remove(segmentId);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        Files.deleteIfExists(segmentPath(segmentId));
+    }
+
+    private FileChannel readerFor(long segmentId) throws IOException {
+        if (reader == null || readerSegmentId != segmentId) {
+            closeReader();
+            reader = FileChannel.open(segmentPath(segmentId), StandardOpenOption.READ);
+            readerSegmentId = segmentId;
+        }
+        return reader;
+    }
+
+    private void closeReader() throws IOException {
+        if (reader != null) {
+            reader.close();
+            reader = null;
+            readerSegmentId = -1L;
+        }
+    }
+
+    private void writeCheckpoint() throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(16).putLong(committed.segmentId()).putLong(committed.offset());
+        Path temp = directory.resolve(name + ".ack.tmp");
+        Files.write(temp, buffer.array());
+        Files.move(temp, checkpointPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private Path checkpointPath() {
+        return directory.resolve(name + ".ack");
+    }
+
+    private Path segmentPath(long segmentId) {
+        return directory.resolve(String.format("%s-%016d%s", name, segmentId, SEGMENT_SUFFIX));
+    }
+
+    private Long parseSegmentId(Path path) {
+        String fileName = path.getFileName().toString();
+        String digits = fileName.substring(name.length() + 1, fileName.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(digits);
+        } catch (NumberFormatException ignored) {
+            return null;
+        }
+    }
+
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Unexpected end of spool segment");
+            }
+            offset += read;
+        }
+    }
+
+    public record Position(long segmentId, long offset) implements Comparable<Position> {
+        @Override
+        public int compareTo(Position other) {
+            int bySegment = Long.compare(segmentId, other.segmentId);
+            return bySegment != 0 ? bySegment : Long.compare(offset, other.offset);
+        }
+    }
+
+    // A sequence of 0 means the batch was spooled without one.
+    public record SpoolBatch<T>(List<T> items, long sequence, Position start, Position end) {
+    }
+}
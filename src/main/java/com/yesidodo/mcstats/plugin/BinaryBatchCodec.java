@@ -0,0 +1,425 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+public final class BinaryBatchCodec {
+    public static final String CONTENT_TYPE = "application/vnd.mcstats.batch+binary";
+
+    private static final byte[] MAGIC = {'M', 'C', 'S', 'B'};
+    private static final int VERSION = 3;
+    private static final int FIRST_VERSION_WITH_SECTIONS = 2;
+    private static final int FIRST_VERSION_WITH_EVENT_SERVERS = 3;
+    private static final int KIND_EVENTS = 1;
+    private static final int KIND_TELEMETRY = 2;
+
+    private BinaryBatchCodec() {
+    }
+
+    // Events of relayed players name their origin server, and `serverId` stands in for players of this dictionary's
+    // own server; null leaves those to the request's server id. Batches without any server stay at version 2.
+    public static void writeEvents(PayloadBuffer out, List<StatEvent> events, StatDictionary dictionary, String serverId) {
+        Map<Integer, Integer> uuidIndex = new HashMap<>();
+        List<Integer> players = new ArrayList<>();
+        Map<Integer, Integer> metricIndex = new HashMap<>();
+        List<String> metrics = new ArrayList<>();
+        long baseTs = Long.MAX_VALUE;
+        for (StatEvent event : events) {
+            if (uuidIndex.putIfAbsent(event.playerId(), players.size()) == null) {
+                players.add(event.playerId());
+            }
+            if (metricIndex.putIfAbsent(event.metricId(), metrics.size()) == null) {
+                metrics.add(dictionary.metricName(event.metricId()));
+            }
+            baseTs = Math.min(baseTs, event.timestampUtc());
+        }
+
+        Map<String, Integer> serverIndex = new HashMap<>();
+        List<String> servers = new ArrayList<>();
+        int[] playerServers = new int[players.size()];
+        for (int i = 0; i < players.size(); i++) {
+            String server = dictionary.serverId(players.get(i));
+            if (server == null) {
+                server = serverId;
+            }
+            if (server != null) {
+                Integer index = serverIndex.putIfAbsent(server, servers.size());
+                if (index == null) {
+                    index = servers.size();
+                    servers.add(server);
+                }
+                // 0 is the request's server.
+                playerServers[i] = index + 1;
+            }
+        }
+
+        writeHeader(out, servers.isEmpty() ? FIRST_VERSION_WITH_SECTIONS : FIRST_VERSION_WITH_EVENT_SERVERS, KIND_EVENTS);
+        writeVarint(out, players.size());
+        out.ensureCapacity(players.size() * 16);
+        for (int playerId : players) {
+            UUID uuid = dictionary.uuid(playerId);
+            writeFixedLong(out, uuid.getMostSignificantBits());
+            writeFixedLong(out, uuid.getLeastSignificantBits());
+        }
+        writeStrings(out, metrics);
+        if (!servers.isEmpty()) {
+            writeStrings(out, servers);
+            for (int server : playerServers) {
+                writeVarint(out, server);
+            }
+        }
+
+        writeVarint(out, events.size());
+        writeVarint(out, events.isEmpty() ? 0L : baseTs);
+        long previousTs = events.isEmpty() ? 0L : baseTs;
+        for (StatEvent event : events) {
+            writeVarint(out, uuidIndex.get(event.playerId()));
+            writeVarint(out, metricIndex.get(event.metricId()));
+            writeVarint(out, zigzag(event.delta()));
+            writeVarint(out, zigzag(event.timestampUtc() - previousTs));
+            previousTs = event.timestampUtc();
+        }
+    }
+
+    public static void writeTelemetry(PayloadBuffer out, List<TelemetrySample> samples) {
+        Map<String, Integer> stringIndex = new HashMap<>();
+        List<String> strings = new ArrayList<>();
+        long baseTs = Long.MAX_VALUE;
+        for (TelemetrySample sample : samples) {
+            if (stringIndex.putIfAbsent(sample.serverId(), strings.size()) == null) {
+                strings.add(sample.serverId());
+            }
+            baseTs = Math.min(baseTs, sample.timestampUtc());
+        }
+
+        List<TelemetryFields.Field> fields = TelemetryFields.ALL;
+        writeHeader(out, VERSION, KIND_TELEMETRY);
+        writeStrings(out, strings);
+        writeVarint(out, fields.size());
+        for (TelemetryFields.Field field : fields) {
+            writeString(out, field.name());
+            out.write(field.kind().ordinal());
+        }
+
+        writeVarint(out, samples.size());
+        writeVarint(out, samples.isEmpty() ? 0L : baseTs);
+        long previousTs = samples.isEmpty() ? 0L : baseTs;
+        int bitmapBytes = (fields.size() + 7) / 8;
+        for (TelemetrySample sample : samples) {
+            writeVarint(out, stringIndex.get(sample.serverId()));
+            writeVarint(out, zigzag(sample.timestampUtc() - previousTs));
+            previousTs = sample.timestampUtc();
+
+            out.ensureCapacity(bitmapBytes);
+            int bitmapStart = out.size();
+            out.setSize(bitmapStart + bitmapBytes);
+            byte[] bytes = out.array();
+            for (int i = 0; i < bitmapBytes; i++) {
+                bytes[bitmapStart + i] = 0;
+            }
+            for (int i = 0; i < fields.size(); i++) {
+                Number value = sample.get(fields.get(i));
+                if (value == null) {
+                    continue;
+                }
+                // Re-read the array: writing values may have grown the buffer.
+                out.array()[bitmapStart + (i >>> 3)] |= (byte) (1 << (i & 7));
+                writeValue(out, fields.get(i).kind(), value);
+            }
+            writeSections(out, sample.sections());
+        }
+    }
+
+    public static List<StatEvent> readEvents(byte[] bytes, int offset, int length, StatDictionary dictionary) throws IOException {
+        Reader in = new Reader(bytes, offset, length);
+        int version = in.expectHeader(KIND_EVENTS);
+
+        int uuidCount = in.readCount();
+        UUID[] uuids = new UUID[uuidCount];
+        for (int i = 0; i < uuidCount; i++) {
+            uuids[i] = new UUID(in.readFixedLong(), in.readFixedLong());
+        }
+        String[] metricNames = in.readStrings();
+        int[] metricIds = new int[metricNames.length];
+        for (int i = 0; i < metricNames.length; i++) {
+            metricIds[i] = dictionary.metric(metricNames[i]);
+        }
+        boolean hasServers = version >= FIRST_VERSION_WITH_EVENT_SERVERS;
+        String[] servers = hasServers ? in.readStrings() : new String[0];
+        int[] playerIds = new int[uuidCount];
+        for (int i = 0; i < uuidCount; i++) {
+            int server = hasServers ? in.readIndex(servers.length + 1) : 0;
+            playerIds[i] = dictionary.player(server == 0 ? null : servers[server - 1], uuids[i]);
+        }
+
+        int eventCount = in.readCount();
+        long ts = in.readVarint();
+        List<StatEvent> events = new ArrayList<>(eventCount);
+        for (int i = 0; i < eventCount; i++) {
+            int playerId = playerIds[in.readIndex(uuidCount)];
+            int metricId = metricIds[in.readIndex(metricIds.length)];
+            long delta = unzigzag(in.readVarint());
+            ts += unzigzag(in.readVarint());
+            events.add(new StatEvent(playerId, metricId, delta, ts));
+        }
+        return events;
+    }
+
+    public static List<TelemetrySample> readTelemetry(byte[] bytes, int offset, int length) throws IOException {
+        Reader in = new Reader(bytes, offset, length);
+        int version = in.expectHeader(KIND_TELEMETRY);
+
+        String[] strings = in.readStrings();
+        int fieldCount = in.readCount();
+        TelemetryFields.Kind[] kinds = new TelemetryFields.Kind[fieldCount];
+        int[] targetIndex = new int[fieldCount];
+        Map<String, Integer> known = new HashMap<>();
+        for (int i = 0; i < TelemetryFields.ALL.size(); i++) {
+            known.put(TelemetryFields.ALL.get(i).name(), i);
+        }
+        for (int i = 0; i < fieldCount; i++) {
+            String name = in.readString();
+            int kind = in.readByte();
+            if (kind >= TelemetryFields.Kind.values().length) {
+                throw new IOException("Unknown telemetry field kind " + kind + " for " + name);
+            }
+            kinds[i] = TelemetryFields.Kind.values()[kind];
+            targetIndex[i] = known.getOrDefault(name, -1);
+        }
+
+        int sampleCount = in.readCount();
+        long ts = in.readVarint();
+        int bitmapBytes = (fieldCount + 7) / 8;
+        List<TelemetrySample> samples = new ArrayList<>(sampleCount);
+        for (int s = 0; s < sampleCount; s++) {
+            String serverId = strings[in.readIndex(strings.length)];
+            ts += unzigzag(in.readVarint());
+            int bitmapStart = in.skip(bitmapBytes);
+
+            Number[] values = new Number[TelemetryFields.ALL.size()];
+            for (int i = 0; i < fieldCount; i++) {
+                if ((bytes[bitmapStart + (i >>> 3)] & (1 << (i & 7))) == 0) {
+                    continue;
+                }
+                Number value = in.readValue(kinds[i]);
+                if (targetIndex[i] >= 0) {
+                    values[targetIndex[i]] = value;
+                }
+            }
+            List<TelemetrySection> sections = version >= FIRST_VERSION_WITH_SECTIONS ? in.readSections() : List.of();
+            samples.add(new TelemetrySample(serverId, ts, values, sections));
+        }
+        return samples;
+    }
+
+    private static void writeHeader(PayloadBuffer out, int version, int kind) {
+        out.write(MAGIC, 0, MAGIC.length);
+        out.write(version);
+        out.write(kind);
+    }
+
+    private static void writeStrings(PayloadBuffer out, List<String> values) {
+        writeVarint(out, values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void writeSections(PayloadBuffer out, List<TelemetrySection> sections) {
+        writeVarint(out, sections.size());
+        for (TelemetrySection section : sections) {
+            writeString(out, section.name());
+            writeStrings(out, section.columns());
+            writeVarint(out, section.rows().size());
+            for (TelemetryRow row : section.rows()) {
+                writeString(out, row.key());
+                for (double value : row.values()) {
+                    writeFixedLongLe(out, Double.doubleToRawLongBits(value));
+                }
+            }
+        }
+    }
+
+    private static void writeString(PayloadBuffer out, String value) {
+        byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, utf8.length);
+        out.write(utf8, 0, utf8.length);
+    }
+
+    private static void writeValue(PayloadBuffer out, TelemetryFields.Kind kind, Number value) {
+        if (kind == TelemetryFields.Kind.DOUBLE) {
+            writeFixedLongLe(out, Double.doubleToRawLongBits(value.doubleValue()));
+        } else {
+            writeVarint(out, zigzag(value.longValue()));
+        }
+    }
+
+    private static void writeVarint(PayloadBuffer out, long value) {
+        out.ensureCapacity(10);
+        while ((value & ~0x7FL) != 0L) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static void writeFixedLong(PayloadBuffer out, long value) {
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static void writeFixedLongLe(PayloadBuffer out, long value) {
+        for (int shift = 0; shift < 64; shift += 8) {
+            out.write((int) (value >>> shift));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1L);
+    }
+
+    private static final class Reader {
+        private final byte[] bytes;
+        private final int end;
+        private int position;
+
+        private Reader(byte[] bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.position = offset;
+            this.end = offset + length;
+        }
+
+        private int expectHeader(int kind) throws IOException {
+            for (byte b : MAGIC) {
+                if (readByte() != b) {
+                    throw new IOException("Not an MCStats binary batch");
+                }
+            }
+            int version = readByte();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported MCStats binary batch version " + version);
+            }
+            int actualKind = readByte();
+            if (actualKind != kind) {
+                throw new IOException("Expected batch kind " + kind + " but found " + actualKind);
+            }
+            return version;
+        }
+
+        private int readByte() throws IOException {
+            if (position >= end) {
+                throw new IOException("Truncated MCStats binary batch");
+            }
+            return bytes[position++] & 0xFF;
+        }
+
+        private int skip(int count) throws IOException {
+            if (end - position < count) {
+                throw new IOException("Truncated MCStats binary batch");
+            }
+            int start = position;
+            position += count;
+            return start;
+        }
+
+        private long readVarint() throws IOException {
+            long result = 0L;
+            for (int shift = 0; shift < 64; shift += 7) {
+                int b = readByte();
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IOException("Malformed varint in MCStats binary batch");
+        }
+
+        private int readCount() throws IOException {
+            long count = readVarint();
+            if (count < 0L || count > end - position + 1L) {
+                throw new IOException("Implausible element count " + count + " in MCStats binary batch");
+            }
+            return (int) count;
+        }
+
+        private int readIndex(int size) throws IOException {
+            long index = readVarint();
+            if (index < 0L || index >= size) {
+                throw new IOException("Dictionary index " + index + " out of range " + size);
+            }
+            return (int) index;
+        }
+
+        private long readFixedLong() throws IOException {
+            int start = skip(8);
+            long value = 0L;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[start + i] & 0xFFL);
+            }
+            return value;
+        }
+
+        private String readString() throws IOException {
+            int length = readCount();
+            int start = skip(length);
+            return new String(bytes, start, length, StandardCharsets.UTF_8);
+        }
+
+        private String[] readStrings() throws IOException {
+            int count = readCount();
+            String[] values = new String[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = readString();
+            }
+            return values;
+        }
+
+        private List<TelemetrySection> readSections() throws IOException {
+            int sectionCount = readCount();
+            List<TelemetrySection> sections = new ArrayList<>(sectionCount);
+            for (int s = 0; s < sectionCount; s++) {
+                String name = readString();
+                List<String> columns = List.of(readStrings());
+                int rowCount = readCount();
+                List<TelemetryRow> rows = new ArrayList<>(rowCount);
+                for (int r = 0; r < rowCount; r++) {
+                    String key = readString();
+                    double[] values = new double[columns.size()];
+                    for (int c = 0; c < values.length; c++) {
+                        values[c] = readDouble();
+                    }
+                    rows.add(new TelemetryRow(key, values));
+                }
+                sections.add(new TelemetrySection(name, columns, rows));
+            }
+            return sections;
+        }
+
+        private double readDouble() throws IOException {
+            int start = skip(8);
+            long bits = 0L;
+            for (int i = 7; i >= 0; i--) {
+                bits = (bits << 8) | (bytes[start + i] & 0xFFL);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+
+        private Number readValue(TelemetryFields.Kind kind) throws IOException {
+            if (kind == TelemetryFields.Kind.DOUBLE) {
+                return readDouble();
+            }
+            long value = unzigzag(readVarint());
+            return kind == TelemetryFields.Kind.INTEGER ? (Number) (int) value : (Number) value;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public final class CgroupReader implements TelemetrySource {
+    private static final Path CGROUP_ROOT = Path.of("/sys/fs/cgroup");
+    private static final Path PROC_PRESSURE = Path.of("/proc/pressure");
+    // cgroup v1 reports "no limit" as a page-aligned Long.MAX_VALUE.
+    private static final long UNLIMITED_THRESHOLD = Long.MAX_VALUE / 2L;
+
+    private final boolean v2;
+    private final Path cpuDir;
+    private final Path memoryDir;
+    private Long lastThrottledPeriods;
+    private Long lastThrottledNanos;
+    private Long lastOomKills;
+
+    private CgroupReader(boolean v2, Path cpuDir, Path memoryDir) {
+        this.v2 = v2;
+        this.cpuDir = cpuDir;
+        this.memoryDir = memoryDir;
+    }
+
+    public static CgroupReader detect() {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(Path.of("/proc/self/cgroup"));
+        } catch (IOException | RuntimeException e) {
+            return new CgroupReader(false, null, null);
+        }
+
+        if (Files.exists(CGROUP_ROOT.resolve("cgroup.controllers"))) {
+            for (String line : lines) {
+                if (line.startsWith("0::")) {
+                    Path dir = resolve(CGROUP_ROOT, line.substring(3));
+                    return new CgroupReader(true, dir, dir);
+                }
+            }
+            return new CgroupReader(true, CGROUP_ROOT, CGROUP_ROOT);
+        }
+
+        Path cpuDir = null;
+        Path memoryDir = null;
+        for (String line : lines) {
+            String[] parts = line.split(":", 3);
+            if (parts.length != 3) {
+                continue;
+            }
+            for (String controller : parts[1].split(",")) {
+                if (controller.equals("cpu") && cpuDir == null) {
+                    cpuDir = resolve(CGROUP_ROOT.resolve(parts[1]), parts[2]);
+                } else if (controller.equals("memory") && memoryDir == null) {
+                    memoryDir = resolve(CGROUP_ROOT.resolve(parts[1]), parts[2]);
+                }
+            }
+        }
+        return new CgroupReader(false, cpuDir, memoryDir);
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        CgroupStats stats = read();
+        sample.set(TelemetryFields.CPU_QUOTA_CORES, stats.cpuQuotaCores())
+                .set(TelemetryFields.CPU_THROTTLED_PERIODS, stats.cpuThrottledPeriods())
+                .set(TelemetryFields.CPU_THROTTLED_MS, stats.cpuThrottledMs())
+                .set(TelemetryFields.MEMORY_LIMIT_MB, stats.memoryLimitMb())
+                .set(TelemetryFields.MEMORY_WORKING_SET_MB, stats.memoryWorkingSetMb())
+                .set(TelemetryFields.OOM_KILLS, stats.oomKills())
+                .set(TelemetryFields.CPU_PRESSURE_SOME10, stats.cpuPressureSome10())
+                .set(TelemetryFields.MEMORY_PRESSURE_SOME10, stats.memoryPressureSome10())
+                .set(TelemetryFields.MEMORY_PRESSURE_FULL10, stats.memoryPressureFull10())
+                .set(TelemetryFields.IO_PRESSURE_SOME10, stats.ioPressureSome10())
+                .set(TelemetryFields.IO_PRESSURE_FULL10, stats.ioPressureFull10());
+    }
+
+    public CgroupStats read() {
+        Double cpuQuotaCores = null;
+        Long throttledPeriods = null;
+        Double throttledMs = null;
+        if (cpuDir != null) {
+            cpuQuotaCores = v2 ? readCpuMax() : readCfsQuota();
+            Map<String, Long> cpuStat = readKeyValues(cpuDir.resolve("cpu.stat"));
+            Long periods = cpuStat.get("nr_throttled");
+            Long throttledNanos = v2
+                    ? multiply(cpuStat.get("throttled_usec"), 1_000L)
+                    : cpuStat.get("throttled_time");
+            throttledPeriods = delta(periods, lastThrottledPeriods);
+            Long nanos = delta(throttledNanos, lastThrottledNanos);
+            throttledMs = nanos == null ? null : nanos / 1_000_000.0;
+            lastThrottledPeriods = periods;
+            lastThrottledNanos = throttledNanos;
+        }
+
+        Double memoryLimitMb = null;
+        Double workingSetMb = null;
+        Long oomKills = null;
+        if (memoryDir != null) {
+            Long limit = readLong(memoryDir.resolve(v2 ? "memory.max" : "memory.limit_in_bytes"));
+            memoryLimitMb = limit == null || limit >= UNLIMITED_THRESHOLD ? null : bytesToMb(limit);
+
+            Long usage = readLong(memoryDir.resolve(v2 ? "memory.current" : "memory.usage_in_bytes"));
+            Long inactiveFile = readKeyValues(memoryDir.resolve("memory.stat")).get(v2 ? "inactive_file" : "total_inactive_file");
+            if (usage != null) {
+                // Same definition as the kubelet: page cache that can be reclaimed does not count.
+                workingSetMb = bytesToMb(Math.max(0L, usage - (inactiveFile == null ? 0L : inactiveFile)));
+            }
+
+            Long kills = readKeyValues(memoryDir.resolve(v2 ? "memory.events" : "memory.oom_control")).get("oom_kill");
+            oomKills = delta(kills, lastOomKills);
+            lastOomKills = kills;
+        }
+
+        Map<String, Double> cpuPressure = readPressure("cpu");
+        Map<String, Double> memoryPressure = readPressure("memory");
+        Map<String, Double> ioPressure = readPressure("io");
+        return new CgroupStats(
+                cpuQuotaCores,
+                throttledPeriods,
+                throttledMs,
+                memoryLimitMb,
+                workingSetMb,
+                oomKills,
+                cpuPressure.get("some"),
+                memoryPressure.get("some"),
+                memoryPressure.get("full"),
+                ioPressure.get("some"),
+                ioPressure.get("full")
+        );
+    }
+
+    private Double readCpuMax() {
+        String value = readFirstLine(cpuDir.resolve("cpu.max"));
+        if (value == null) {
+            return null;
+        }
+        String[] parts = value.trim().split("\\s+");
+        if (parts.length != 2 || parts[0].equals("max")) {
+            return null;
+        }
+        try {
+            return Double.parseDouble(parts[0]) / Double.parseDouble(parts[1]);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private Double readCfsQuota() {
+        Long quota = readLong(cpuDir.resolve("cpu.cfs_quota_us"));
+        Long period = readLong(cpuDir.resolve("cpu.cfs_period_us"));
+        if (quota == null || period == null || quota <= 0L || period <= 0L) {
+            return null;
+        }
+        return (double) quota / period;
+    }
+
+    private Map<String, Double> readPressure(String resource) {
+        // Prefer the cgroup's own pressure (v2), then the host-wide view.
+        Path path = v2 && cpuDir != null ? cpuDir.resolve(resource + ".pressure") : null;
+        if (path == null || !Files.isReadable(path)) {
+            path = PROC_PRESSURE.resolve(resource);
+        }
+
+        Map<String, Double> values = new HashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path);
+        } catch (IOException | RuntimeException e) {
+            return values;
+        }
+        for (String line : lines) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length < 2 || !parts[1].startsWith("avg10=")) {
+                continue;
+            }
+            try {
+                values.put(parts[0], Double.parseDouble(parts[1].substring("avg10=".length())));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return values;
+    }
+
+    private static Path resolve(Path mount, String cgroupPath) {
+        Path dir = mount.resolve(cgroupPath.startsWith("/") ? cgroupPath.substring(1) : cgroupPath);
+        // Inside a container with its own cgroup namespace the host path is not mounted; the mount root is ours.
+        return Files.isDirectory(dir) ? dir : mount;
+    }
+
+    private static Map<String, Long> readKeyValues(Path path) {
+        Map<String, Long> values = new HashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path);
+        } catch (IOException | RuntimeException e) {
+            return values;
+        }
+        for (String line : lines) {
+            int space = line.indexOf(' ');
+            if (space <= 0) {
+                continue;
+            }
+            try {
+                values.put(line.substring(0, space), Long.parseLong(line.substring(space + 1).trim()));
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        return values;
+    }
+
+    private static Long readLong(Path path) {
+        String value = readFirstLine(path);
+        if (value == null || value.isBlank() || value.trim().equals("max")) {
+            return null;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static String readFirstLine(Path path) {
+        try {
+            List<String> lines = Files.readAllLines(path);
+            return lines.isEmpty() ? null : lines.get(0);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static Long delta(Long current, Long previous) {
+        if (current == null || previous == null) {
+            return null;
+        }
+        return Math.max(0L, current - previous);
+    }
+
+    private static Long multiply(Long value, long factor) {
+        return value == null ? null : value * factor;
+    }
+
+    private static double bytesToMb(long bytes) {
+        return bytes / 1024d / 1024d;
+    }
+
+    public record CgroupStats(
+            Double cpuQuotaCores,
+            Long cpuThrottledPeriods,
+            Double cpuThrottledMs,
+            Double memoryLimitMb,
+            Double memoryWorkingSetMb,
+            Long oomKills,
+            Double cpuPressureSome10,
+            Double memoryPressureSome10,
+            Double memoryPressureFull10,
+            Double ioPressureSome10,
+            Double ioPressureFull10
+    ) {
+    }
+}
@@ -0,0 +1,116 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+
+public final class CircuitBreaker {
+    private final int failureThreshold;
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final List<Runnable> probeListeners = new CopyOnWriteArrayList<>();
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long retryAtMs;
+
+    public CircuitBreaker(int failureThreshold, long baseDelayMs, long maxDelayMs) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.baseDelayMs = Math.max(1L, baseDelayMs);
+        this.maxDelayMs = Math.max(this.baseDelayMs, maxDelayMs);
+    }
+
+    // Called once the half-open probe has settled, so callers turned away during the probe need not poll for it.
+    public void addProbeListener(Runnable listener) {
+        probeListeners.add(listener);
+    }
+
+    public synchronized boolean tryAcquire() {
+        long now = System.currentTimeMillis();
+        return switch (state) {
+            case CLOSED -> now >= retryAtMs;
+            case OPEN -> {
+                if (now < retryAtMs) {
+                    yield false;
+                }
+                state = State.HALF_OPEN;
+                yield true;
+            }
+            case HALF_OPEN -> false;
+        };
+    }
+
+    public void release() {
+        boolean probeSettled;
+        synchronized (this) {
+            probeSettled = state == State.HALF_OPEN;
+            if (probeSettled) {
+                state = State.OPEN;
+            }
+        }
+        notifyIf(probeSettled);
+    }
+
+    public void onSuccess() {
+        boolean probeSettled;
+        synchronized (this) {
+            probeSettled = state == State.HALF_OPEN;
+            state = State.CLOSED;
+            consecutiveFailures = 0;
+            retryAtMs = 0L;
+        }
+        notifyIf(probeSettled);
+    }
+
+    public void onFailure(long retryAfterMs) {
+        boolean probeSettled;
+        synchronized (this) {
+            probeSettled = state == State.HALF_OPEN;
+            consecutiveFailures++;
+            retryAtMs = System.currentTimeMillis() + Math.max(retryAfterMs, backoffDelayMs(consecutiveFailures));
+            if (probeSettled || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+            }
+        }
+        notifyIf(probeSettled);
+    }
+
+    // Only an open breaker counts: a single transient failure is retried without moving data to the spool.
+    public synchronized boolean isDegraded() {
+        return state != State.CLOSED;
+    }
+
+    public synchronized boolean isProbing() {
+        return state == State.HALF_OPEN;
+    }
+
+    public synchronized long millisUntilRetry() {
+        return Math.max(0L, retryAtMs - System.currentTimeMillis());
+    }
+
+    public synchronized State state() {
+        return state;
+    }
+
+    private void notifyIf(boolean probeSettled) {
+        if (!probeSettled) {
+            return;
+        }
+        for (Runnable listener : probeListeners) {
+            listener.run();
+        }
+    }
+
+    private long backoffDelayMs(int failures) {
+        int exponent = Math.min(30, failures - 1);
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << exponent);
+        // Equal jitter: never retry immediately, but spread servers that failed together.
+        long half = ceiling / 2L;
+        return half + ThreadLocalRandom.current().nextLong(ceiling - half + 1L);
+    }
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+}
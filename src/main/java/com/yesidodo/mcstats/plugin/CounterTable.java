@@ -0,0 +1,85 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class CounterTable {
+    // Keys are stored plus one so that zero can mark an empty slot.
+    private static final long EMPTY = 0L;
+
+    private final int mask;
+    private final int maxSize;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray values;
+    private final AtomicInteger size = new AtomicInteger();
+
+    public CounterTable(int requestedCapacity) {
+        // At least twice the requested entries keeps linear probes short.
+        int capacity = Integer.highestOneBit(Math.max(4, Math.min(1 << 29, requestedCapacity)) - 1) << 2;
+        this.mask = capacity - 1;
+        this.maxSize = capacity / 2;
+        this.keys = new AtomicLongArray(capacity);
+        this.values = new AtomicLongArray(capacity);
+    }
+
+    public boolean add(long key, long delta) {
+        long stored = key + 1L;
+        int index = mix(key) & mask;
+        for (int probes = 0; probes <= mask; ) {
+            long current = keys.get(index);
+            if (current == stored) {
+                values.getAndAdd(index, delta);
+                return true;
+            }
+            if (current == EMPTY) {
+                if (size.get() >= maxSize) {
+                    return false;
+                }
+                if (keys.compareAndSet(index, EMPTY, stored)) {
+                    size.incrementAndGet();
+                    values.getAndAdd(index, delta);
+                    return true;
+                }
+                // Lost the race for this slot; re-read it, it may now hold our key.
+                continue;
+            }
+            index = (index + 1) & mask;
+            probes++;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    // Callers must make sure no add() is running.
+    public void drain(EntryConsumer consumer) {
+        if (size.get() == 0) {
+            return;
+        }
+        for (int i = 0; i <= mask; i++) {
+            long stored = keys.get(i);
+            if (stored == EMPTY) {
+                continue;
+            }
+            long value = values.get(i);
+            keys.set(i, EMPTY);
+            values.set(i, 0L);
+            if (value != 0L) {
+                consumer.accept(stored - 1L, value);
+            }
+        }
+        size.set(0);
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+}
@@ -0,0 +1,50 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.List;
+import java.util.Objects;
+
+// Queue drops, delivery outcomes and spool usage; counts cover the time since the previous sample.
+public final class DeliveryHealth implements TelemetrySource {
+    private final StatsQueue statsQueue;
+    private final TelemetryQueue telemetryQueue;
+    private final CircuitBreaker breaker;
+    private final DeliveryStats deliveryStats;
+    private final List<BatchSpool<?>> spools;
+    private long reportedDroppedSegments;
+
+    public DeliveryHealth(
+            StatsQueue statsQueue,
+            TelemetryQueue telemetryQueue,
+            CircuitBreaker breaker,
+            DeliveryStats deliveryStats,
+            List<BatchSpool<?>> spools
+    ) {
+        this.statsQueue = statsQueue;
+        this.telemetryQueue = telemetryQueue;
+        this.breaker = breaker;
+        this.deliveryStats = deliveryStats;
+        this.spools = spools.stream().filter(Objects::nonNull).toList();
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        sample.set(TelemetryFields.DROPPED_EVENTS, statsQueue.takeDroppedCount())
+                .set(TelemetryFields.DROPPED_SAMPLES, telemetryQueue.takeDroppedCount())
+                .set(TelemetryFields.CIRCUIT_STATE, breaker.state().ordinal())
+                .set(TelemetryFields.RETRIED_BATCHES, deliveryStats.takeRetriedBatches())
+                .set(TelemetryFields.REJECTED_BATCHES, deliveryStats.takeRejectedBatches());
+        if (spools.isEmpty()) {
+            return;
+        }
+
+        long bytes = 0L;
+        long droppedSegments = 0L;
+        for (BatchSpool<?> spool : spools) {
+            bytes += spool.sizeBytes();
+            droppedSegments += spool.droppedSegments();
+        }
+        sample.set(TelemetryFields.SPOOL_MB, bytes / 1024d / 1024d)
+                .set(TelemetryFields.SPOOL_DROPPED_SEGMENTS, droppedSegments - reportedDroppedSegments);
+        reportedDroppedSegments = droppedSegments;
+    }
+}
@@ -0,0 +1,456 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+import java.util.function.IntSupplier;
+import java.util.logging.Logger;
+
+public final class DeliveryPipeline<T> {
+    private static final long DRAIN_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100L);
+
+    private final String name;
+    private final Logger logger;
+    private final IntFunction<List<T>> source;
+    private final Consumer<List<T>> requeue;
+    private final IntSupplier depth;
+    private final BatchSpool<T> spool;
+    private final BatchSpool<T> deadLetter;
+    private final BatchSender<T> sender;
+    private final CircuitBreaker breaker;
+    private final DeliveryStats stats;
+    private final PluginExecutor executor;
+    private final int minBatchSize;
+    private final int maxBatchSize;
+    private final int batchSizeStep;
+    private final long targetLatencyNanos;
+    private final int maxInFlight;
+    private volatile int batchSize;
+    // Lowered below maxBatchSize once the endpoint answers 413, so neither growth nor a drain reaches that size again.
+    private volatile int batchCeiling;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger spooledInFlight = new AtomicInteger();
+    private final AtomicInteger spoolingFresh = new AtomicInteger();
+    // Counts every take from the source, so isIdle() can tell that no batch was taken while it looked.
+    private final AtomicLong takes = new AtomicLong();
+    // Seeded from the clock so sequences of a restarted server do not repeat those of the previous run.
+    private final AtomicLong nextSequence = new AtomicLong(System.currentTimeMillis() << 16);
+    private final Set<CompletableFuture<?>> pending = ConcurrentHashMap.newKeySet();
+    // Fresh batches on the wire, by sequence; whichever of the completion or an expired drain removes one settles it.
+    private final ConcurrentHashMap<Long, List<T>> unsettled = new ConcurrentHashMap<>();
+    private final AtomicLong deliveredItems = new AtomicLong();
+    private final AtomicLong spooledItems = new AtomicLong();
+    private final AtomicLong rejectedItems = new AtomicLong();
+    private final Object selectionLock = new Object();
+    private final AtomicBoolean wakeScheduled = new AtomicBoolean();
+    private volatile boolean stopped;
+    private volatile boolean draining;
+    private DrainReport drainBaseline;
+    private boolean rewindPending;
+
+    public DeliveryPipeline(
+            String name,
+            Logger logger,
+            IntFunction<List<T>> source,
+            Consumer<List<T>> requeue,
+            IntSupplier depth,
+            BatchSpool<T> spool,
+            BatchSpool<T> deadLetter,
+            BatchSender<T> sender,
+            CircuitBreaker breaker,
+            DeliveryStats stats,
+            PluginExecutor executor,
+            int batchSize,
+            int maxBatchSize,
+            long targetLatencyMs,
+            int maxInFlight
+    ) {
+        this.name = name;
+        this.logger = logger;
+        this.source = source;
+        this.requeue = requeue;
+        this.depth = depth;
+        this.spool = spool;
+        this.deadLetter = deadLetter;
+        this.sender = sender;
+        this.breaker = breaker;
+        this.stats = stats;
+        this.executor = executor;
+        this.batchSize = Math.max(1, batchSize);
+        this.minBatchSize = Math.max(1, this.batchSize / 8);
+        this.maxBatchSize = Math.max(this.batchSize, maxBatchSize);
+        this.batchCeiling = this.maxBatchSize;
+        this.batchSizeStep = Math.max(1, this.batchSize / 4);
+        this.targetLatencyNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, targetLatencyMs));
+        this.maxInFlight = Math.max(1, maxInFlight);
+        breaker.addProbeListener(this::pump);
+    }
+
+    public void pump() {
+        if (stopped) {
+            return;
+        }
+        boolean degraded = breaker.isDegraded();
+        if (degraded) {
+            // While the endpoint is failing, park fresh data on disk and probe with a single batch.
+            spoolFreshData();
+        }
+
+        while (true) {
+            int window = degraded ? 1 : desiredWindow();
+            int current = inFlight.get();
+            if (current >= window) {
+                return;
+            }
+            if (!inFlight.compareAndSet(current, current + 1)) {
+                continue;
+            }
+            if (!breaker.tryAcquire()) {
+                inFlight.decrementAndGet();
+                scheduleWake();
+                return;
+            }
+
+            Batch<T> batch = nextBatch();
+            if (batch == null) {
+                breaker.release();
+                inFlight.decrementAndGet();
+                return;
+            }
+            send(batch);
+        }
+    }
+
+    public boolean awaitIdle(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                return false;
+            }
+            try {
+                CompletableFuture.allOf(pending.toArray(CompletableFuture[]::new)).get(remaining, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (Exception ignored) {
+                // Timeouts and failures are re-checked against the deadline above.
+            }
+        }
+        return true;
+    }
+
+    // For shutdown: sends everything queued in memory in the largest accepted batches over the full in-flight window.
+    // The spool is not replayed meanwhile; it is already on disk and is picked up on the next start.
+    public void startDrain() {
+        drainBaseline = new DrainReport(deliveredItems.get(), spooledItems.get(), rejectedItems.get(), 0L);
+        draining = true;
+        pump();
+    }
+
+    // Waits for startDrain() to finish, then stops the pipeline and spools whatever is still queued or unconfirmed.
+    // Batches spooled while on the wire keep their sequence, so a copy that did arrive is deduplicated on replay.
+    public DrainReport finishDrain(long timeoutMs) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(Math.max(0L, timeoutMs));
+        while (depth.getAsInt() > 0 || !pending.isEmpty()) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0L) {
+                break;
+            }
+            pump();
+            if (pending.isEmpty()) {
+                // Nothing could be sent, e.g. the breaker is waiting out a backoff.
+                LockSupport.parkNanos(Math.min(remaining, DRAIN_POLL_NANOS));
+            } else {
+                awaitIdle(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(Math.min(remaining, DRAIN_POLL_NANOS))));
+            }
+        }
+        stopped = true;
+
+        long dropped = 0L;
+        for (Long sequence : unsettled.keySet()) {
+            List<T> items = unsettled.remove(sequence);
+            if (items != null && !appendToSpool(spool, items, sequence)) {
+                dropped += items.size();
+            }
+        }
+        List<T> items;
+        while (!(items = source.apply(batchCeiling)).isEmpty()) {
+            if (!appendToSpool(spool, items, nextSequence.getAndIncrement())) {
+                dropped += items.size();
+            }
+        }
+
+        DrainReport baseline = drainBaseline != null ? drainBaseline : new DrainReport(0L, 0L, 0L, 0L);
+        return new DrainReport(
+                deliveredItems.get() - baseline.delivered(),
+                spooledItems.get() - baseline.spooled(),
+                rejectedItems.get() - baseline.rejected(),
+                dropped
+        );
+    }
+
+    public int batchSize() {
+        return batchSize;
+    }
+
+    // True when no item is queued, being spooled or on the wire. Holders are counted before they take from the source
+    // and released after anything handed back is requeued, so a batch taken or returned meanwhile changes `takes`.
+    public boolean isIdle() {
+        long taken = takes.get();
+        return inFlight.get() == 0
+                && spoolingFresh.get() == 0
+                && depth.getAsInt() == 0
+                && unsettled.isEmpty()
+                && takes.get() == taken;
+    }
+
+    private void send(Batch<T> batch) {
+        long startedNanos = System.nanoTime();
+        if (batch.spooled() == null) {
+            unsettled.put(batch.sequence(), batch.items());
+        }
+        CompletableFuture<DeliveryResult> result;
+        try {
+            result = sender.send(batch.items(), batch.sequence());
+        } catch (RuntimeException e) {
+            result = CompletableFuture.completedFuture(DeliveryResult.NETWORK_FAILURE);
+        }
+
+        CompletableFuture<Void> completion = result
+                .handle((delivery, error) -> delivery == null || error != null ? DeliveryResult.NETWORK_FAILURE : delivery)
+                .thenAccept(delivery -> {
+                    adaptBatchSize(batch.items().size(), delivery, System.nanoTime() - startedNanos);
+                    complete(batch, delivery);
+                });
+        pending.add(completion);
+        completion.whenComplete((ignored, error) -> pending.remove(completion));
+    }
+
+    private void complete(Batch<T> batch, DeliveryResult result) {
+        if (batch.spooled() == null && unsettled.remove(batch.sequence()) == null) {
+            // An expired drain has already spooled this batch.
+            inFlight.decrementAndGet();
+            return;
+        }
+        boolean retry = result.outcome() == DeliveryResult.Outcome.RETRY;
+        try {
+            if (result.outcome() == DeliveryResult.Outcome.TOO_LARGE && batch.items().size() > 1) {
+                // The endpoint is reachable; the batch only has to be smaller.
+                breaker.onSuccess();
+                split(batch);
+            } else if (retry) {
+                breaker.onFailure(result.retryAfterMs());
+                stats.recordRetry();
+                if (batch.spooled() != null) {
+                    synchronized (selectionLock) {
+                        rewindPending = true;
+                    }
+                } else if (!appendToSpool(spool, batch.items(), batch.sequence())) {
+                    requeue.accept(batch.items());
+                }
+            } else {
+                // A rejected batch still proves the endpoint is reachable.
+                breaker.onSuccess();
+                if (result.outcome() == DeliveryResult.Outcome.DELIVERED) {
+                    deliveredItems.addAndGet(batch.items().size());
+                } else {
+                    rejectedItems.addAndGet(batch.items().size());
+                    stats.recordRejected();
+                    logger.warning("MCStats API rejected " + name + " batch of " + batch.items().size()
+                            + " with HTTP " + result.statusCode() + (deadLetter != null ? "; moved to dead-letter spool" : "; dropped"));
+                    appendToSpool(deadLetter, batch.items(), batch.sequence());
+                }
+                if (batch.spooled() != null && !stopped) {
+                    spool.ack(batch.spooled());
+                }
+            }
+        } catch (IOException e) {
+            logger.warning("Failed to checkpoint " + name + " spool: " + e.getMessage());
+        } finally {
+            if (batch.spooled() != null) {
+                spooledInFlight.decrementAndGet();
+            }
+            inFlight.decrementAndGet();
+        }
+
+        if (retry) {
+            scheduleWake();
+        } else if (hasBacklog()) {
+            pump();
+        }
+    }
+
+    private synchronized void adaptBatchSize(int items, DeliveryResult result, long latencyNanos) {
+        // AIMD: grow by a fixed step while full batches are accepted quickly, halve on overload or slow responses.
+        int current = batchSize;
+        if (result.outcome() == DeliveryResult.Outcome.TOO_LARGE) {
+            batchCeiling = Math.max(1, Math.min(batchCeiling, items / 2));
+            batchSize = Math.min(batchCeiling, Math.max(minBatchSize, current / 2));
+        } else if (result.outcome() == DeliveryResult.Outcome.RETRY || latencyNanos > targetLatencyNanos) {
+            batchSize = Math.min(batchCeiling, Math.max(minBatchSize, current / 2));
+        } else if (result.outcome() == DeliveryResult.Outcome.DELIVERED && items >= current) {
+            batchSize = Math.min(batchCeiling, current + batchSizeStep);
+        }
+    }
+
+    // Fresh items go back to the front of the queue and are taken again at the lowered size. A spooled record is
+    // replayed as a whole, so it is replaced by its two halves.
+    private void split(Batch<T> batch) throws IOException {
+        if (batch.spooled() == null) {
+            requeue.accept(batch.items());
+            return;
+        }
+
+        List<T> items = batch.items();
+        int half = items.size() / 2;
+        if (appendToSpool(spool, List.copyOf(items.subList(0, half)), nextSequence.getAndIncrement())
+                && appendToSpool(spool, List.copyOf(items.subList(half, items.size())), nextSequence.getAndIncrement())) {
+            if (!stopped) {
+                spool.ack(batch.spooled());
+            }
+        } else {
+            synchronized (selectionLock) {
+                rewindPending = true;
+            }
+        }
+    }
+
+    private void scheduleWake() {
+        // Another pipeline's probe is in flight; the breaker pumps this one when it settles.
+        if (stopped || breaker.isProbing() || !wakeScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        long delayMs = Math.max(1L, breaker.millisUntilRetry());
+        try {
+            executor.schedule(() -> {
+                wakeScheduled.set(false);
+                pump();
+            }, delayMs);
+        } catch (RejectedExecutionException e) {
+            wakeScheduled.set(false);
+        }
+    }
+
+    private Batch<T> nextBatch() {
+        synchronized (selectionLock) {
+            if (spool != null && !draining) {
+                if (rewindPending) {
+                    if (spooledInFlight.get() > 0) {
+                        return null;
+                    }
+                    spool.rewind();
+                    rewindPending = false;
+                }
+
+                try {
+                    BatchSpool.SpoolBatch<T> spooled = spool.poll();
+                    if (spooled != null) {
+                        spooledInFlight.incrementAndGet();
+                        long sequence = spooled.sequence() != 0L ? spooled.sequence() : nextSequence.getAndIncrement();
+                        return new Batch<>(spooled.items(), sequence, spooled);
+                    }
+                } catch (IOException e) {
+                    logger.warning("Failed to read " + name + " spool: " + e.getMessage());
+                }
+            }
+
+            takes.incrementAndGet();
+            List<T> items = source.apply(fetchSize());
+            return items.isEmpty() ? null : new Batch<>(items, nextSequence.getAndIncrement(), null);
+        }
+    }
+
+    private void spoolFreshData() {
+        if (spool == null) {
+            return;
+        }
+
+        spoolingFresh.incrementAndGet();
+        try {
+            while (true) {
+                takes.incrementAndGet();
+                List<T> items = source.apply(fetchSize());
+                if (items.isEmpty()) {
+                    return;
+                }
+                if (!appendToSpool(spool, items, nextSequence.getAndIncrement())) {
+                    requeue.accept(items);
+                    return;
+                }
+            }
+        } finally {
+            spoolingFresh.decrementAndGet();
+        }
+    }
+
+    private boolean appendToSpool(BatchSpool<T> target, List<T> items, long sequence) {
+        if (target == null) {
+            return false;
+        }
+
+        try {
+            int dropped = target.append(items, sequence);
+            if (dropped > 0) {
+                logger.warning("MCStats " + name + (target == deadLetter ? " dead-letter" : "")
+                        + " spool reached its disk limit; discarded the " + dropped
+                        + " oldest segment(s) of undelivered data");
+            }
+            if (target == spool) {
+                spooledItems.addAndGet(items.size());
+            }
+            return true;
+        } catch (IOException e) {
+            logger.warning("Failed to spool undelivered " + name + " batch: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private int fetchSize() {
+        return draining ? batchCeiling : batchSize;
+    }
+
+    private int desiredWindow() {
+        int size = fetchSize();
+        long backlog = depth.getAsInt();
+        if (spool != null && !draining && spool.hasUnread()) {
+            backlog += (long) maxInFlight * size;
+        }
+        long batches = (backlog + size - 1) / size;
+        return (int) Math.max(1L, Math.min(maxInFlight, batches));
+    }
+
+    private boolean hasBacklog() {
+        if (stopped) {
+            return false;
+        }
+        if (draining) {
+            return depth.getAsInt() > 0;
+        }
+        return depth.getAsInt() >= batchSize || (spool != null && spool.hasUnread());
+    }
+
+    @FunctionalInterface
+    public interface BatchSender<T> {
+        // The sequence identifies the batch across retries and restarts; it is the basis of the idempotency key.
+        CompletableFuture<DeliveryResult> send(List<T> items, long sequence);
+    }
+
+    // Item counts of one drain; dropped items were neither confirmed by the endpoint nor written to the spool.
+    public record DrainReport(long delivered, long spooled, long rejected, long dropped) {
+    }
+
+    private record Batch<T>(List<T> items, long sequence, BatchSpool.SpoolBatch<T> spooled) {
+    }
+}
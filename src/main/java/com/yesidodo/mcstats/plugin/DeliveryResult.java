@@ -0,0 +1,27 @@
+package com.yesidodo.mcstats.plugin;
+
+public record DeliveryResult(Outcome outcome, int statusCode, long retryAfterMs) {
+    public static final DeliveryResult DELIVERED = new DeliveryResult(Outcome.DELIVERED, 0, 0L);
+    public static final DeliveryResult NETWORK_FAILURE = new DeliveryResult(Outcome.RETRY, 0, 0L);
+
+    public static DeliveryResult fromStatus(int statusCode, long retryAfterMs) {
+        if (statusCode >= 200 && statusCode < 300) {
+            return new DeliveryResult(Outcome.DELIVERED, statusCode, 0L);
+        }
+        if (statusCode == 413) {
+            return new DeliveryResult(Outcome.TOO_LARGE, statusCode, 0L);
+        }
+        if (statusCode == 408 || statusCode == 425 || statusCode == 429 || statusCode >= 500) {
+            return new DeliveryResult(Outcome.RETRY, statusCode, retryAfterMs);
+        }
+        return new DeliveryResult(Outcome.REJECTED, statusCode, 0L);
+    }
+
+    public enum Outcome {
+        DELIVERED,
+        RETRY,
+        // The batch is resent in smaller parts; only a single item that is still too large is rejected.
+        TOO_LARGE,
+        REJECTED
+    }
+}
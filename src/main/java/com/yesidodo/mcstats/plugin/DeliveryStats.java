@@ -0,0 +1,24 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+public final class DeliveryStats {
+    private final AtomicLong retriedBatches = new AtomicLong();
+    private final AtomicLong rejectedBatches = new AtomicLong();
+
+    public void recordRetry() {
+        retriedBatches.incrementAndGet();
+    }
+
+    public void recordRejected() {
+        rejectedBatches.incrementAndGet();
+    }
+
+    public long takeRetriedBatches() {
+        return retriedBatches.getAndSet(0L);
+    }
+
+    public long takeRejectedBatches() {
+        return rejectedBatches.getAndSet(0L);
+    }
+}
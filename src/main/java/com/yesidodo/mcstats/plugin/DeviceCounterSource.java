@@ -0,0 +1,16 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+
+public interface DeviceCounterSource {
+    void refreshInventory() throws IOException;
+
+    void readNetwork(CounterSink sink) throws IOException;
+
+    void readDisks(CounterSink sink) throws IOException;
+
+    @FunctionalInterface
+    interface CounterSink {
+        void accept(String device, long firstBytes, long secondBytes);
+    }
+}
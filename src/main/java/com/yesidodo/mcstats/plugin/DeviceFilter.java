@@ -0,0 +1,64 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+public final class DeviceFilter {
+    // Container hosts create veth interfaces with random names all the time; past this many, names are matched uncached.
+    private static final int MAX_DECISIONS = 1024;
+
+    private final List<Pattern> include;
+    private final List<Pattern> exclude;
+    private final Map<String, Boolean> decisions = new HashMap<>();
+
+    public DeviceFilter(List<String> include, List<String> exclude) {
+        this.include = include.stream().map(DeviceFilter::compileGlob).toList();
+        this.exclude = exclude.stream().map(DeviceFilter::compileGlob).toList();
+    }
+
+    public synchronized boolean accepts(String device) {
+        // Device names are stable while they exist, so each one is matched against the patterns once per inventory.
+        Boolean decision = decisions.get(device);
+        if (decision == null) {
+            decision = matches(device);
+            if (decisions.size() < MAX_DECISIONS) {
+                decisions.put(device, decision);
+            }
+        }
+        return decision;
+    }
+
+    // Called with each inventory refresh, so devices that have gone away drop out of the cache.
+    public synchronized void clear() {
+        decisions.clear();
+    }
+
+    private boolean matches(String device) {
+        if (!include.isEmpty() && include.stream().noneMatch(pattern -> pattern.matcher(device).matches())) {
+            return false;
+        }
+        return exclude.stream().noneMatch(pattern -> pattern.matcher(device).matches());
+    }
+
+    private static Pattern compileGlob(String glob) {
+        StringBuilder regex = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (!literal.isEmpty()) {
+                    regex.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                regex.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            regex.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(regex.toString());
+    }
+}
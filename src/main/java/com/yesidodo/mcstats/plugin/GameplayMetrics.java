@@ -0,0 +1,94 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class GameplayMetrics implements Listener {
+    private final StatsQueue queue;
+    private final PlayerSlots slots;
+    private final List<Binding> bindings;
+    private final int[] metricIds;
+    private final int metricCount;
+    // Row-major by slot: all metrics of one player sit next to each other.
+    private final AtomicLongArray counters;
+
+    public GameplayMetrics(StatsQueue queue, PlayerSlots slots, List<Binding> bindings) {
+        this.queue = queue;
+        this.slots = slots;
+        this.bindings = List.copyOf(bindings);
+        this.metricCount = this.bindings.size();
+        this.metricIds = new int[metricCount];
+        for (int i = 0; i < metricCount; i++) {
+            metricIds[i] = queue.dictionary().metric(this.bindings.get(i).metric());
+        }
+        this.counters = new AtomicLongArray(slots.capacity() * Math.max(1, metricCount));
+    }
+
+    public void register(Plugin plugin, PluginManager pluginManager) {
+        // Only configured sources get a handler, so disabled metrics cost nothing per event.
+        for (int metricId = 0; metricId < metricCount; metricId++) {
+            GameplaySource source = bindings.get(metricId).source();
+            int id = metricId;
+            pluginManager.registerEvent(
+                    source.eventType(),
+                    this,
+                    EventPriority.MONITOR,
+                    (listener, event) -> source.record(this, event, id),
+                    plugin,
+                    true
+            );
+        }
+    }
+
+    public void flush() {
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+            // Registered like a writer, so a quit cannot flush, free and reassign the slot under this flush.
+            if (slots.enterSlot(slot) != null) {
+                try {
+                    flushSlot(slot);
+                } finally {
+                    slots.exit(slot);
+                }
+            }
+        }
+    }
+
+    void add(Player player, int metricId, long delta) {
+        if (player == null || delta <= 0L) {
+            return;
+        }
+
+        UUID uuid = player.getUniqueId();
+        int slot = slots.enter(uuid);
+        if (slot < 0) {
+            // No slot (more players than slots, or the player is leaving): use the queue's own aggregation.
+            queue.offer(queue.dictionary().player(uuid), metricIds[metricId], delta);
+            return;
+        }
+        counters.getAndAdd(slot * metricCount + metricId, delta);
+        slots.exit(slot);
+    }
+
+    // Callers hold the slot: registered through PlayerSlots.enterSlot(), or retired and not yet freed. After retire()
+    // this takes the slot's final totals and leaves it zeroed for its next owner.
+    void flushSlot(int slot) {
+        int base = slot * metricCount;
+        int playerId = slots.playerId(slot);
+        for (int metricId = 0; metricId < metricCount; metricId++) {
+            long delta = counters.getAndSet(base + metricId, 0L);
+            if (delta != 0L) {
+                queue.offer(playerId, metricIds[metricId], delta);
+            }
+        }
+    }
+
+    public record Binding(GameplaySource source, String metric) {
+    }
+}
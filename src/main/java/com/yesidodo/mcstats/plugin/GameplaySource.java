@@ -0,0 +1,149 @@
+package com.yesidodo.mcstats.plugin;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import org.bukkit.Location;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.entity.Projectile;
+import org.bukkit.event.Event;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.block.BlockPlaceEvent;
+import org.bukkit.event.entity.EntityDamageByEntityEvent;
+import org.bukkit.event.entity.EntityDamageEvent;
+import org.bukkit.event.entity.EntityDeathEvent;
+import org.bukkit.event.entity.PlayerDeathEvent;
+import org.bukkit.event.inventory.CraftItemEvent;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+
+import java.util.Locale;
+
+// Events that share a handler list (damage, deaths) reach every source registered on it, so each source re-checks the type.
+public enum GameplaySource {
+    BLOCK_BREAK(BlockBreakEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof BlockBreakEvent breakEvent) {
+                metrics.add(breakEvent.getPlayer(), metricId, 1L);
+            }
+        }
+    },
+    BLOCK_PLACE(BlockPlaceEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof BlockPlaceEvent placeEvent) {
+                metrics.add(placeEvent.getPlayer(), metricId, 1L);
+            }
+        }
+    },
+    MOB_KILL(EntityDeathEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof EntityDeathEvent deathEvent && !(deathEvent.getEntity() instanceof Player)) {
+                metrics.add(deathEvent.getEntity().getKiller(), metricId, 1L);
+            }
+        }
+    },
+    PLAYER_KILL(PlayerDeathEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof PlayerDeathEvent deathEvent) {
+                metrics.add(deathEvent.getEntity().getKiller(), metricId, 1L);
+            }
+        }
+    },
+    DAMAGE_DEALT(EntityDamageByEntityEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof EntityDamageByEntityEvent damageEvent) {
+                metrics.add(attacker(damageEvent.getDamager()), metricId, centiPoints(damageEvent.getFinalDamage()));
+            }
+        }
+    },
+    DAMAGE_TAKEN(EntityDamageEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof EntityDamageEvent damageEvent && damageEvent.getEntity() instanceof Player player) {
+                metrics.add(player, metricId, centiPoints(damageEvent.getFinalDamage()));
+            }
+        }
+    },
+    CHAT(AsyncChatEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof AsyncChatEvent chatEvent) {
+                metrics.add(chatEvent.getPlayer(), metricId, 1L);
+            }
+        }
+    },
+    COMMAND(PlayerCommandPreprocessEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof PlayerCommandPreprocessEvent commandEvent) {
+                metrics.add(commandEvent.getPlayer(), metricId, 1L);
+            }
+        }
+    },
+    MOVE(PlayerMoveEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (!(event instanceof PlayerMoveEvent moveEvent)) {
+                return;
+            }
+            Location from = moveEvent.getFrom();
+            Location to = moveEvent.getTo();
+            if (to == null || from.getWorld() != to.getWorld()) {
+                return;
+            }
+            double dx = to.getX() - from.getX();
+            double dy = to.getY() - from.getY();
+            double dz = to.getZ() - from.getZ();
+            metrics.add(moveEvent.getPlayer(), metricId, Math.round(Math.sqrt(dx * dx + dy * dy + dz * dz) * 100.0));
+        }
+    },
+    CRAFT(CraftItemEvent.class) {
+        @Override
+        void record(GameplayMetrics metrics, Event event, int metricId) {
+            if (event instanceof CraftItemEvent craftEvent && craftEvent.getWhoClicked() instanceof Player player) {
+                metrics.add(player, metricId, Math.max(1, craftEvent.getRecipe().getResult().getAmount()));
+            }
+        }
+    };
+
+    private final Class<? extends Event> eventType;
+
+    GameplaySource(Class<? extends Event> eventType) {
+        this.eventType = eventType;
+    }
+
+    public Class<? extends Event> eventType() {
+        return eventType;
+    }
+
+    abstract void record(GameplayMetrics metrics, Event event, int metricId);
+
+    public static GameplaySource parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ignored) {
+            return null;
+        }
+    }
+
+    private static Player attacker(Entity damager) {
+        if (damager instanceof Player player) {
+            return player;
+        }
+        if (damager instanceof Projectile projectile && projectile.getShooter() instanceof Player shooter) {
+            return shooter;
+        }
+        return null;
+    }
+
+    private static long centiPoints(double damage) {
+        return Math.round(damage * 100.0);
+    }
+}
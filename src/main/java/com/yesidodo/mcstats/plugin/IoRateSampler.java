@@ -0,0 +1,212 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+public final class IoRateSampler implements TelemetrySource {
+    private final Logger logger;
+    private final DeviceCounterSource fallback;
+    private final DeviceFilter networkFilter;
+    private final DeviceFilter diskFilter;
+    private final long inventoryRefreshNanos;
+    private final RateTracker network = new RateTracker("networkInterfaces", List.of("rxKbps", "txKbps"));
+    private final RateTracker disks = new RateTracker("diskDevices", List.of("readKbps", "writeKbps"));
+    private DeviceCounterSource source;
+    private long lastInventoryRefresh;
+    private boolean inventoryLoaded;
+
+    public IoRateSampler(
+            Logger logger,
+            DeviceCounterSource primary,
+            DeviceCounterSource fallback,
+            DeviceFilter networkFilter,
+            DeviceFilter diskFilter,
+            long inventoryRefreshSeconds
+    ) {
+        this.logger = logger;
+        this.source = primary;
+        this.fallback = fallback;
+        this.networkFilter = networkFilter;
+        this.diskFilter = diskFilter;
+        this.inventoryRefreshNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, inventoryRefreshSeconds));
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        IoRates rates = sample();
+        sample.set(TelemetryFields.NETWORK_RX_KBPS, rates.networkRxKbps())
+                .set(TelemetryFields.NETWORK_TX_KBPS, rates.networkTxKbps())
+                .set(TelemetryFields.DISK_READ_KBPS, rates.diskReadKbps())
+                .set(TelemetryFields.DISK_WRITE_KBPS, rates.diskWriteKbps())
+                .section(rates.networkInterfaces())
+                .section(rates.diskDevices());
+    }
+
+    public IoRates sample() {
+        long now = System.nanoTime();
+        try {
+            read(now);
+        } catch (IOException | RuntimeException e) {
+            if (source == fallback) {
+                logger.warning("Failed to read disk/network counters: " + e.getMessage());
+                return IoRates.EMPTY;
+            }
+            logger.warning("Falling back to OSHI for disk/network counters: " + e.getMessage());
+            source = fallback;
+            inventoryLoaded = false;
+            network.reset();
+            disks.reset();
+            return IoRates.EMPTY;
+        }
+
+        return new IoRates(
+                disks.totalFirst(),
+                disks.totalSecond(),
+                network.totalFirst(),
+                network.totalSecond(),
+                disks.section(),
+                network.section()
+        );
+    }
+
+    private void read(long now) throws IOException {
+        if (!inventoryLoaded || now - lastInventoryRefresh >= inventoryRefreshNanos) {
+            source.refreshInventory();
+            networkFilter.clear();
+            diskFilter.clear();
+            inventoryLoaded = true;
+            lastInventoryRefresh = now;
+        }
+
+        network.begin(now);
+        source.readNetwork((device, rx, tx) -> {
+            if (networkFilter.accepts(device)) {
+                network.update(device, rx, tx);
+            }
+        });
+        network.end();
+
+        disks.begin(now);
+        source.readDisks((device, read, written) -> {
+            if (diskFilter.accepts(device)) {
+                disks.update(device, read, written);
+            }
+        });
+        disks.end();
+    }
+
+    public record IoRates(
+            Double diskReadKbps,
+            Double diskWriteKbps,
+            Double networkRxKbps,
+            Double networkTxKbps,
+            TelemetrySection diskDevices,
+            TelemetrySection networkInterfaces
+    ) {
+        private static final IoRates EMPTY = new IoRates(null, null, null, null, null, null);
+    }
+
+    private static final class RateTracker {
+        private final String sectionName;
+        private final List<String> columns;
+        private final Map<String, DeviceState> devices = new HashMap<>();
+        private long sampleNanos;
+        private long previousSampleNanos;
+        private long generation;
+        private List<TelemetryRow> rows = new ArrayList<>();
+        private double totalFirst;
+        private double totalSecond;
+        private boolean hasRates;
+
+        private RateTracker(String sectionName, List<String> columns) {
+            this.sectionName = sectionName;
+            this.columns = columns;
+        }
+
+        private void begin(long now) {
+            previousSampleNanos = sampleNanos;
+            sampleNanos = now;
+            generation++;
+            rows = new ArrayList<>();
+            totalFirst = 0.0;
+            totalSecond = 0.0;
+            hasRates = false;
+        }
+
+        private void update(String device, long first, long second) {
+            DeviceState state = devices.get(device);
+            if (state == null) {
+                devices.put(device, new DeviceState(first, second, generation));
+                return;
+            }
+
+            if (state.generation == generation - 1 && previousSampleNanos > 0L) {
+                double seconds = (sampleNanos - previousSampleNanos) / 1_000_000_000.0;
+                double firstKbps = toKbps(first - state.first, seconds);
+                double secondKbps = toKbps(second - state.second, seconds);
+                rows.add(new TelemetryRow(device, new double[]{firstKbps, secondKbps}));
+                totalFirst += firstKbps;
+                totalSecond += secondKbps;
+                hasRates = true;
+            }
+            state.first = first;
+            state.second = second;
+            state.generation = generation;
+        }
+
+        private void end() {
+            // Forget devices that disappeared so a re-created interface starts from a fresh baseline.
+            Iterator<DeviceState> iterator = devices.values().iterator();
+            while (iterator.hasNext()) {
+                if (iterator.next().generation != generation) {
+                    iterator.remove();
+                }
+            }
+        }
+
+        private void reset() {
+            devices.clear();
+            sampleNanos = 0L;
+            previousSampleNanos = 0L;
+            rows = new ArrayList<>();
+            hasRates = false;
+        }
+
+        private Double totalFirst() {
+            return hasRates ? totalFirst : null;
+        }
+
+        private Double totalSecond() {
+            return hasRates ? totalSecond : null;
+        }
+
+        private TelemetrySection section() {
+            return hasRates ? new TelemetrySection(sectionName, columns, rows) : null;
+        }
+
+        private static double toKbps(long byteDelta, double seconds) {
+            if (seconds <= 0.0) {
+                return 0.0;
+            }
+            return (Math.max(0L, byteDelta) / 1024.0) / seconds;
+        }
+    }
+
+    private static final class DeviceState {
+        private long first;
+        private long second;
+        private long generation;
+
+        private DeviceState(long first, long second, long generation) {
+            this.first = first;
+            this.second = second;
+            this.generation = generation;
+        }
+    }
+}
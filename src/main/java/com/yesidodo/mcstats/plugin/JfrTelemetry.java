@@ -0,0 +1,168 @@
+package com.yesidodo.mcstats.plugin;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+public final class JfrTelemetry implements TelemetrySource, AutoCloseable {
+    private static final int MAX_OPEN_SAFEPOINTS = 256;
+
+    private final Logger logger;
+    private final LatencyHistogram gcPauses = new LatencyHistogram();
+    private final LongAdder gcPauseMicros = new LongAdder();
+    private final AtomicLong heapAfterGcBytes = new AtomicLong(-1L);
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder safepoints = new LongAdder();
+    private final LongAdder safepointNanos = new LongAdder();
+    private final LongAdder monitorEnters = new LongAdder();
+    private final LongAdder monitorNanos = new LongAdder();
+    private final Map<Long, Instant> openSafepoints = new LinkedHashMap<>();
+    private RecordingStream stream;
+    private long windowStartNanos = System.nanoTime();
+
+    public JfrTelemetry(Logger logger) {
+        this.logger = logger;
+    }
+
+    public void start(long monitorThresholdMs, int allocationSamplesPerSecond) {
+        try {
+            RecordingStream recording = new RecordingStream();
+            recording.setMaxAge(Duration.ofSeconds(30));
+            recording.enable("jdk.GarbageCollection");
+            recording.enable("jdk.GCHeapSummary");
+            recording.enable("jdk.SafepointBegin");
+            recording.enable("jdk.SafepointEnd");
+            recording.enable("jdk.ObjectAllocationSample").with("throttle", allocationSamplesPerSecond + "/s");
+            recording.enable("jdk.JavaMonitorEnter").withThreshold(Duration.ofMillis(monitorThresholdMs));
+
+            recording.onEvent("jdk.GarbageCollection", this::onGarbageCollection);
+            recording.onEvent("jdk.GCHeapSummary", this::onHeapSummary);
+            recording.onEvent("jdk.SafepointBegin", this::onSafepointBegin);
+            recording.onEvent("jdk.SafepointEnd", this::onSafepointEnd);
+            recording.onEvent("jdk.ObjectAllocationSample", event -> allocatedBytes.add(event.getLong("weight")));
+            recording.onEvent("jdk.JavaMonitorEnter", event -> {
+                monitorEnters.increment();
+                monitorNanos.add(event.getDuration().toNanos());
+            });
+            recording.startAsync();
+            this.stream = recording;
+        } catch (RuntimeException | LinkageError e) {
+            // Some JREs ship without JFR or have it disabled.
+            logger.warning("JFR streaming is unavailable, detailed GC telemetry is disabled: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        Window window = takeWindow();
+        sample.set(TelemetryFields.GC_PAUSE_COUNT, window.gcPauseCount())
+                .set(TelemetryFields.GC_PAUSE_TOTAL_MS, window.gcPauseTotalMs())
+                .set(TelemetryFields.GC_PAUSE_P50_MS, window.gcPauseP50Ms())
+                .set(TelemetryFields.GC_PAUSE_P99_MS, window.gcPauseP99Ms())
+                .set(TelemetryFields.GC_PAUSE_MAX_MS, window.gcPauseMaxMs())
+                .set(TelemetryFields.HEAP_AFTER_GC_MB, window.heapAfterGcMb())
+                .set(TelemetryFields.ALLOCATION_RATE_MB_PER_SEC, window.allocationRateMbPerSec())
+                .set(TelemetryFields.SAFEPOINT_COUNT, window.safepointCount())
+                .set(TelemetryFields.SAFEPOINT_TOTAL_MS, window.safepointTotalMs())
+                .set(TelemetryFields.MONITOR_CONTENDED_COUNT, window.monitorContendedCount())
+                .set(TelemetryFields.MONITOR_CONTENDED_MS, window.monitorContendedMs());
+    }
+
+    public Window takeWindow() {
+        if (stream == null) {
+            return Window.EMPTY;
+        }
+
+        long now = System.nanoTime();
+        double seconds = (now - windowStartNanos) / 1_000_000_000.0;
+        windowStartNanos = now;
+
+        LatencyHistogram.Snapshot pauses = gcPauses.snapshotAndReset();
+        long heapAfterGc = heapAfterGcBytes.get();
+        long allocated = allocatedBytes.sumThenReset();
+        return new Window(
+                pauses.totalCount(),
+                gcPauseMicros.sumThenReset() / 1000.0,
+                microsToMillis(pauses.percentile(0.50)),
+                microsToMillis(pauses.percentile(0.99)),
+                microsToMillis(pauses.max()),
+                heapAfterGc < 0L ? null : heapAfterGc / 1024d / 1024d,
+                seconds > 0.0 ? allocated / 1024d / 1024d / seconds : null,
+                safepoints.sumThenReset(),
+                safepointNanos.sumThenReset() / 1_000_000.0,
+                monitorEnters.sumThenReset(),
+                monitorNanos.sumThenReset() / 1_000_000.0
+        );
+    }
+
+    @Override
+    public void close() {
+        if (stream != null) {
+            stream.close();
+            stream = null;
+        }
+    }
+
+    private void onGarbageCollection(RecordedEvent event) {
+        long pauseMicros = TimeUnit.NANOSECONDS.toMicros(event.getDuration("sumOfPauses").toNanos());
+        gcPauses.record(pauseMicros);
+        gcPauseMicros.add(pauseMicros);
+    }
+
+    private void onHeapSummary(RecordedEvent event) {
+        if ("After GC".equals(event.getString("when"))) {
+            heapAfterGcBytes.set(event.getLong("heapUsed"));
+        }
+    }
+
+    private void onSafepointBegin(RecordedEvent event) {
+        synchronized (openSafepoints) {
+            if (openSafepoints.size() >= MAX_OPEN_SAFEPOINTS) {
+                Long oldest = openSafepoints.keySet().iterator().next();
+                openSafepoints.remove(oldest);
+            }
+            openSafepoints.put(event.getLong("safepointId"), event.getStartTime());
+        }
+    }
+
+    private void onSafepointEnd(RecordedEvent event) {
+        Instant begin;
+        synchronized (openSafepoints) {
+            begin = openSafepoints.remove(event.getLong("safepointId"));
+        }
+        if (begin == null) {
+            return;
+        }
+
+        safepoints.increment();
+        safepointNanos.add(Math.max(0L, Duration.between(begin, event.getEndTime()).toNanos()));
+    }
+
+    private static Double microsToMillis(Long micros) {
+        return micros == null ? null : micros / 1000.0;
+    }
+
+    public record Window(
+            Long gcPauseCount,
+            Double gcPauseTotalMs,
+            Double gcPauseP50Ms,
+            Double gcPauseP99Ms,
+            Double gcPauseMaxMs,
+            Double heapAfterGcMb,
+            Double allocationRateMbPerSec,
+            Long safepointCount,
+            Double safepointTotalMs,
+            Long monitorContendedCount,
+            Double monitorContendedMs
+    ) {
+        private static final Window EMPTY = new Window(null, null, null, null, null, null, null, null, null, null, null);
+    }
+}
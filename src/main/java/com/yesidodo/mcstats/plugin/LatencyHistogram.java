@@ -0,0 +1,124 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class LatencyHistogram {
+    static final int SUB_BUCKET_BITS = 7;
+    static final int LINEAR_BUCKETS = 1 << SUB_BUCKET_BITS;
+    static final int HALF_BUCKETS = LINEAR_BUCKETS >>> 1;
+    static final int MAX_MAGNITUDE = 39;
+    static final int BUCKET_COUNT = LINEAR_BUCKETS + (MAX_MAGNITUDE - SUB_BUCKET_BITS + 1) * HALF_BUCKETS;
+    static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1L;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong max = new AtomicLong(-1L);
+
+    public void record(long value) {
+        long clamped = Math.max(0L, Math.min(MAX_VALUE, value));
+        counts.incrementAndGet(bucketIndex(clamped));
+        long currentMax = max.get();
+        while (clamped > currentMax && !max.compareAndSet(currentMax, clamped)) {
+            currentMax = max.get();
+        }
+    }
+
+    public Snapshot snapshotAndReset() {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0L;
+        // Each recorded value lands either in this snapshot or the next one, never in both.
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            long count = counts.get(i) == 0L ? 0L : counts.getAndSet(i, 0L);
+            snapshot[i] = count;
+            total += count;
+        }
+        return new Snapshot(snapshot, total, max.getAndSet(-1L));
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_BUCKETS) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BUCKET_BITS + 1;
+        int top = (int) (value >>> shift);
+        return LINEAR_BUCKETS + (magnitude - SUB_BUCKET_BITS) * HALF_BUCKETS + (top - HALF_BUCKETS);
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int offset = index - LINEAR_BUCKETS;
+        int shift = offset / HALF_BUCKETS + 1;
+        long top = HALF_BUCKETS + offset % HALF_BUCKETS;
+        return top << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_BUCKETS) {
+            return index;
+        }
+        int offset = index - LINEAR_BUCKETS;
+        int shift = offset / HALF_BUCKETS + 1;
+        long top = HALF_BUCKETS + offset % HALF_BUCKETS;
+        return ((top + 1L) << shift) - 1L;
+    }
+
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long totalCount;
+        private final long max;
+
+        private Snapshot(long[] counts, long totalCount, long max) {
+            this.counts = counts;
+            this.totalCount = totalCount;
+            this.max = max;
+        }
+
+        public long totalCount() {
+            return totalCount;
+        }
+
+        public Long max() {
+            return totalCount == 0L || max < 0L ? null : max;
+        }
+
+        public Long percentile(double q) {
+            if (totalCount == 0L) {
+                return null;
+            }
+
+            long rank = Math.max(1L, (long) Math.ceil(q * totalCount));
+            long seen = 0L;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    long midpoint = (bucketLowerBound(i) + bucketUpperBound(i)) >>> 1;
+                    return max >= 0L ? Math.min(max, midpoint) : midpoint;
+                }
+            }
+            return max();
+        }
+
+        public Snapshot merge(Snapshot other) {
+            long[] merged = counts.clone();
+            for (int i = 0; i < merged.length; i++) {
+                merged[i] += other.counts[i];
+            }
+            return new Snapshot(merged, totalCount + other.totalCount, Math.max(max, other.max));
+        }
+
+        public TelemetrySection toSection(String name) {
+            List<TelemetryRow> rows = new ArrayList<>();
+            for (int i = 0; i < counts.length; i++) {
+                if (counts[i] != 0L) {
+                    rows.add(new TelemetryRow(Integer.toString(i), new double[]{counts[i]}));
+                }
+            }
+            return new TelemetrySection(name, List.of("count"), rows);
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.HandlerList;
+import org.bukkit.event.Listener;
+import org.bukkit.event.server.PluginDisableEvent;
+import org.bukkit.plugin.RegisteredListener;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class ListenerTimings implements TelemetrySource, Listener {
+    private static final List<String> COLUMNS = List.of("calls", "totalMs", "maxMs");
+
+    private final Set<String> plugins;
+    private final List<TimedListener> timed = new CopyOnWriteArrayList<>();
+
+    public ListenerTimings(Set<String> plugins) {
+        this.plugins = plugins;
+    }
+
+    public int instrument() {
+        int wrapped = 0;
+        Set<TimedListener> registered = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (HandlerList handlers : HandlerList.getHandlerLists()) {
+            RegisteredListener[] listeners = handlers.getRegisteredListeners();
+            boolean pending = false;
+            for (RegisteredListener listener : listeners) {
+                if (listener instanceof TimedListener wrapper) {
+                    registered.add(wrapper);
+                } else if (accepts(listener)) {
+                    pending = true;
+                }
+            }
+            if (!pending) {
+                continue;
+            }
+
+            // Re-register the whole list so listeners keep their order within a priority.
+            synchronized (handlers) {
+                for (RegisteredListener listener : listeners) {
+                    handlers.unregister(listener);
+                }
+                for (RegisteredListener listener : listeners) {
+                    if (!(listener instanceof TimedListener) && accepts(listener)) {
+                        TimedListener wrapper = new TimedListener(listener);
+                        timed.add(wrapper);
+                        registered.add(wrapper);
+                        listener = wrapper;
+                        wrapped++;
+                    }
+                    handlers.register(listener);
+                }
+            }
+        }
+        // Listeners unregistered one by one leave no disable event behind.
+        timed.removeIf(wrapper -> !registered.contains(wrapper));
+        return wrapped;
+    }
+
+    // A disabled plugin's listeners are unregistered with it; dropping their wrappers lets its class loader go.
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPluginDisable(PluginDisableEvent event) {
+        timed.removeIf(wrapper -> wrapper.getPlugin() == event.getPlugin());
+    }
+
+    public void restore() {
+        // Wrappers must not outlive this plugin's class loader.
+        for (HandlerList handlers : HandlerList.getHandlerLists()) {
+            RegisteredListener[] listeners = handlers.getRegisteredListeners();
+            boolean wrapped = false;
+            for (RegisteredListener listener : listeners) {
+                if (listener instanceof TimedListener) {
+                    wrapped = true;
+                    break;
+                }
+            }
+            if (!wrapped) {
+                continue;
+            }
+
+            synchronized (handlers) {
+                for (RegisteredListener listener : listeners) {
+                    handlers.unregister(listener);
+                }
+                for (RegisteredListener listener : listeners) {
+                    handlers.register(listener instanceof TimedListener wrapper ? wrapper.delegate : listener);
+                }
+            }
+        }
+        timed.clear();
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        sample.section(takeSection());
+    }
+
+    public TelemetrySection takeSection() {
+        Map<String, long[]> totals = new HashMap<>();
+        for (TimedListener listener : timed) {
+            String eventName = listener.eventName;
+            if (eventName == null) {
+                continue;
+            }
+            long[] total = totals.computeIfAbsent(listener.pluginName + "/" + eventName, ignored -> new long[3]);
+            listener.timer.drainInto(total);
+        }
+
+        List<TelemetryRow> rows = new ArrayList<>(totals.size());
+        totals.entrySet().stream()
+                .filter(entry -> entry.getValue()[0] > 0L)
+                .sorted((left, right) -> Long.compare(right.getValue()[1], left.getValue()[1]))
+                .forEach(entry -> rows.add(new TelemetryRow(entry.getKey(), new double[]{
+                        entry.getValue()[0],
+                        entry.getValue()[1] / 1_000_000.0,
+                        entry.getValue()[2] / 1_000_000.0
+                })));
+        return rows.isEmpty() ? null : new TelemetrySection("listenerTimings", COLUMNS, rows);
+    }
+
+    private boolean accepts(RegisteredListener listener) {
+        return plugins.isEmpty() || plugins.contains(listener.getPlugin().getName());
+    }
+
+    private static final class TimedListener extends RegisteredListener {
+        private final RegisteredListener delegate;
+        private final String pluginName;
+        private final StripedTimer timer = new StripedTimer();
+        private volatile String eventName;
+
+        private TimedListener(RegisteredListener delegate) {
+            super(
+                    delegate.getListener(),
+                    (listener, event) -> delegate.callEvent(event),
+                    delegate.getPriority(),
+                    delegate.getPlugin(),
+                    delegate.isIgnoringCancelled()
+            );
+            this.delegate = delegate;
+            this.pluginName = delegate.getPlugin().getName();
+        }
+
+        @Override
+        public void callEvent(Event event) throws EventException {
+            long start = System.nanoTime();
+            try {
+                delegate.callEvent(event);
+            } finally {
+                timer.record(System.nanoTime() - start);
+                if (eventName == null) {
+                    eventName = event.getEventName();
+                }
+            }
+        }
+    }
+
+    private static final class StripedTimer {
+        // One cache line per stripe: calls, total nanos, max nanos.
+        private static final int STRIDE = 8;
+        private static final int STRIPES = Integer.highestOneBit(Math.min(8, Runtime.getRuntime().availableProcessors()));
+
+        private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIDE);
+
+        private void record(long nanos) {
+            int base = (int) (Thread.currentThread().threadId() & (STRIPES - 1)) * STRIDE;
+            cells.getAndIncrement(base);
+            cells.getAndAdd(base + 1, nanos);
+            long max;
+            while (nanos > (max = cells.get(base + 2)) && !cells.compareAndSet(base + 2, max, nanos)) {
+                Thread.onSpinWait();
+            }
+        }
+
+        private void drainInto(long[] total) {
+            for (int stripe = 0; stripe < STRIPES; stripe++) {
+                int base = stripe * STRIDE;
+                total[0] += cells.getAndSet(base, 0L);
+                total[1] += cells.getAndSet(base + 1, 0L);
+                total[2] = Math.max(total[2], cells.getAndSet(base + 2, 0L));
+            }
+        }
+    }
+}
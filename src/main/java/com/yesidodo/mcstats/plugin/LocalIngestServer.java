@@ -0,0 +1,121 @@
+package com.yesidodo.mcstats.plugin;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+
+// Stand-in for the ingest API that accepts and counts batches, so a relay can be exercised without network access.
+public final class LocalIngestServer {
+    private final Logger logger;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+    private final StatDictionary dictionary = new StatDictionary();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong events = new AtomicLong();
+    private final AtomicLong samples = new AtomicLong();
+    // Binary event batches only, by the server each event is attributed to: its own serverId, else the request's.
+    private final Map<String, LongAdder> eventsByServer = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> deltaByServer = new ConcurrentHashMap<>();
+
+    public LocalIngestServer(Logger logger, InetSocketAddress address) throws IOException {
+        this.logger = logger;
+        this.server = HttpServer.create(address, 0);
+        server.createContext("/v1/events/batch", exchange -> handle(exchange, true));
+        server.createContext("/v1/telemetry/batch", exchange -> handle(exchange, false));
+        server.setExecutor(executor);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("Local ingest server listening on " + server.getAddress());
+    }
+
+    public InetSocketAddress address() {
+        return server.getAddress();
+    }
+
+    public long events(String serverId) {
+        LongAdder count = eventsByServer.get(serverId);
+        return count == null ? 0L : count.sum();
+    }
+
+    public long deltaTotal(String serverId) {
+        LongAdder total = deltaByServer.get(serverId);
+        return total == null ? 0L : total.sum();
+    }
+
+    public long samples() {
+        return samples.get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+        logger.info("Local ingest server stopped after " + requests.get() + " requests, "
+                + events.get() + " events and " + samples.get() + " telemetry samples");
+    }
+
+    private void handle(HttpExchange exchange, boolean eventsEndpoint) throws IOException {
+        try (exchange) {
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            if (exchange.getRequestHeaders().getFirst("X-Idempotency-Key") == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            byte[] wire = exchange.getRequestBody().readAllBytes();
+            byte[] body = wire;
+            if ("gzip".equalsIgnoreCase(exchange.getRequestHeaders().getFirst("Content-Encoding"))) {
+                try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(wire))) {
+                    body = in.readAllBytes();
+                }
+            }
+
+            String items = "";
+            if (BinaryBatchCodec.CONTENT_TYPE.equals(exchange.getRequestHeaders().getFirst("Content-Type"))) {
+                try {
+                    int count = eventsEndpoint
+                            ? countEvents(BinaryBatchCodec.readEvents(body, 0, body.length, dictionary), exchange.getRequestHeaders().getFirst("X-MCStats-ServerId"))
+                            : BinaryBatchCodec.readTelemetry(body, 0, body.length).size();
+                    (eventsEndpoint ? events : samples).addAndGet(count);
+                    items = ", " + count + (eventsEndpoint ? " events" : " samples");
+                } catch (IOException e) {
+                    exchange.sendResponseHeaders(400, -1);
+                    return;
+                }
+            }
+
+            requests.incrementAndGet();
+            logger.info(exchange.getRequestURI().getPath() + " from " + exchange.getRequestHeaders().getFirst("X-MCStats-ServerId")
+                    + ": " + wire.length + " bytes on the wire, " + body.length + " decoded" + items
+                    + ", key " + exchange.getRequestHeaders().getFirst("X-Idempotency-Key"));
+            exchange.sendResponseHeaders(202, -1);
+        }
+    }
+
+    private int countEvents(List<StatEvent> batch, String requestServerId) {
+        for (StatEvent event : batch) {
+            String serverId = dictionary.serverId(event.playerId());
+            String key = serverId != null ? serverId : String.valueOf(requestServerId);
+            eventsByServer.computeIfAbsent(key, ignored -> new LongAdder()).increment();
+            deltaByServer.computeIfAbsent(key, ignored -> new LongAdder()).add(event.delta());
+        }
+        return batch.size();
+    }
+}
@@ -1,129 +1,525 @@
 package com.yesidodo.mcstats.plugin;
 
 import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.java.JavaPlugin;
+import oshi.SystemInfo;
 
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Locale;
 
 public final class MCStatsPlugin extends JavaPlugin {
+    private static final long PLAYER_ID_SWEEP_MS = 60_000L;
+
+    private StatDictionary statDictionary;
     private StatsQueue statsQueue;
     private TelemetryQueue telemetryQueue;
+    private BatchSpool<StatEvent> statsSpool;
+    private BatchSpool<TelemetrySample> telemetrySpool;
+    private BatchSpool<StatEvent> statsDeadLetter;
+    private BatchSpool<TelemetrySample> telemetryDeadLetter;
     private SystemTelemetryCollector telemetryCollector;
+    private JfrTelemetry jfrTelemetry;
+    private MainThreadProfiler profiler;
+    private ListenerTimings listenerTimings;
+    private GameplayMetrics gameplayMetrics;
+    private PlayerSlots playerSlots;
+    private SessionTracker sessionTracker;
     private McStatsApiClient client;
+    private RelayClient relayClient;
+    private Relay relay;
+    private DeliveryPipeline<StatEvent> statsPipeline;
+    private DeliveryPipeline<TelemetrySample> telemetryPipeline;
     private ServerSchedulerCompat schedulerCompat;
-    private int statsBatchSize;
-    private int telemetryBatchSize;
+    private AdaptiveFlusher flusher;
+    private PluginExecutor executor;
     private final List<ServerSchedulerCompat.ScheduledHandle> scheduledHandles = new ArrayList<>();
 
     @Override
     public void onEnable() {
         saveDefaultConfig();
 
-        this.statsQueue = new StatsQueue();
-        this.telemetryQueue = new TelemetryQueue();
-        this.statsBatchSize = Math.max(1, getConfig().getInt("api.batch-size", 200));
-        this.telemetryBatchSize = Math.max(1, getConfig().getInt("api.telemetry-batch-size", 120));
+        this.statDictionary = new StatDictionary();
+        this.statsQueue = new StatsQueue(
+                Math.max(2, getConfig().getInt("queue.stats-capacity", 65536)),
+                OverflowPolicy.parse(getConfig().getString("queue.stats-overflow-policy", "coalesce"), OverflowPolicy.COALESCE),
+                getConfig().getBoolean("collect.aggregate-events", true),
+                new HashSet<>(getConfig().getStringList("collect.exact-metrics")),
+                statDictionary
+        );
+        this.telemetryQueue = new TelemetryQueue(
+                Math.max(1, getConfig().getInt("queue.telemetry-capacity", 1024)),
+                OverflowPolicy.parse(getConfig().getString("queue.telemetry-overflow-policy", "drop-oldest"), OverflowPolicy.DROP_OLDEST)
+        );
+        openSpools();
+        int statsBatchSize = Math.max(1, getConfig().getInt("api.batch-size", 200));
+        int telemetryBatchSize = Math.max(1, getConfig().getInt("api.telemetry-batch-size", 120));
 
         String baseUrl = getConfig().getString("api.base-url", "http://127.0.0.1:5000");
         int timeoutMs = getConfig().getInt("api.timeout-ms", 5000);
         String serverId = getConfig().getString("api.server-id", "default-server");
         String apiKey = getConfig().getString("api.api-key", "");
         String secret = getConfig().getString("api.secret", "");
-        if (serverId == null || serverId.isBlank() || apiKey == null || apiKey.isBlank() || secret == null || secret.isBlank()) {
+        String relayMode = getConfig().getString("relay.mode", "off").trim().toLowerCase(Locale.ROOT);
+        if (!relayMode.equals("off") && !relayMode.equals("client") && !relayMode.equals("server")) {
+            getLogger().warning("Unknown relay.mode '" + relayMode + "', sending directly to the API.");
+            relayMode = "off";
+        }
+        // Behind a relay only the relay talks to the API, so the backend needs no credentials.
+        boolean needsCredentials = !relayMode.equals("client");
+        if (serverId == null || serverId.isBlank()
+                || (needsCredentials && (apiKey == null || apiKey.isBlank() || secret == null || secret.isBlank()))) {
             getLogger().severe("api.server-id, api.api-key, api.secret must be configured.");
             getServer().getPluginManager().disablePlugin(this);
             return;
         }
 
-        this.client = new McStatsApiClient(baseUrl, timeoutMs, serverId, apiKey, secret);
-        this.telemetryCollector = new SystemTelemetryCollector(serverId);
-        this.schedulerCompat = new ServerSchedulerCompat(this);
-
-        Bukkit.getPluginManager().registerEvents(new PlayerEventListener(statsQueue), this);
-
-        int playtimeTick = Math.max(1, getConfig().getInt("collect.playtime-tick-seconds", 60));
-        scheduledHandles.add(
-                schedulerCompat.scheduleSyncRepeating(
-                        this::collectPlaytime,
-                        20L * playtimeTick,
-                        20L * playtimeTick
-                )
+        this.executor = new PluginExecutor("MCStats");
+        DeliveryPipeline.BatchSender<StatEvent> statsSender;
+        DeliveryPipeline.BatchSender<TelemetrySample> telemetrySender;
+        String target = baseUrl;
+        if (relayMode.equals("off")) {
+            this.client = new McStatsApiClient(
+                    baseUrl,
+                    timeoutMs,
+                    getConfig().getBoolean("api.http2", true),
+                    McStatsApiClient.Compression.parse(getConfig().getString("api.compression", "none")),
+                    getConfig().getInt("api.compression-min-bytes", 1024),
+                    "binary".equalsIgnoreCase(getConfig().getString("api.wire-format", "json")),
+                    statDictionary,
+                    serverId,
+                    apiKey,
+                    secret,
+                    executor
+            );
+            statsSender = client::sendEventsBatch;
+            telemetrySender = client::sendTelemetryBatch;
+        } else {
+            SocketAddress relayAddress;
+            try {
+                relayAddress = RelayProtocol.parseAddress(getConfig().getString("relay.address", "127.0.0.1:25590"));
+                if (relayMode.equals("server")) {
+                    this.relay = startRelay(relayAddress, baseUrl, timeoutMs, serverId, apiKey, secret);
+                }
+            } catch (IllegalArgumentException | IOException e) {
+                getLogger().severe("Failed to set up the MCStats relay: " + e.getMessage());
+                getServer().getPluginManager().disablePlugin(this);
+                return;
+            }
+            this.relayClient = new RelayClient(relayAddress, statDictionary, serverId);
+            statsSender = relayClient::sendEventsBatch;
+            telemetrySender = relayClient::sendTelemetryBatch;
+            target = "relay at " + relayAddress;
+        }
+        int maxInFlight = Math.max(1, getConfig().getInt("api.max-in-flight", 4));
+        long targetLatencyMs = getConfig().getLong("api.target-latency-ms", 1000L);
+        CircuitBreaker breaker = new CircuitBreaker(
+                getConfig().getInt("api.retry.breaker-failure-threshold", 5),
+                getConfig().getLong("api.retry.base-delay-ms", 500L),
+                getConfig().getLong("api.retry.max-delay-ms", 60000L)
         );
-
-        int flushInterval = Math.max(1, getConfig().getInt("api.flush-interval-seconds", 5));
-        scheduledHandles.add(
-                schedulerCompat.scheduleAsyncRepeating(
-                        this::flushStatsBatch,
-                        20L * flushInterval,
-                        20L * flushInterval
-                )
+        DeliveryStats deliveryStats = new DeliveryStats();
+        this.statsPipeline = new DeliveryPipeline<>(
+                "stats",
+                getLogger(),
+                statsQueue::drain,
+                statsQueue::requeueFront,
+                statsQueue::size,
+                statsSpool,
+                statsDeadLetter,
+                statsSender,
+                breaker,
+                deliveryStats,
+                executor,
+                statsBatchSize,
+                getConfig().getInt("api.max-batch-size", 5000),
+                targetLatencyMs,
+                maxInFlight
         );
-
-        int telemetryCollectInterval = Math.max(1, getConfig().getInt("collect.telemetry-sample-seconds", 10));
-        scheduledHandles.add(
-                schedulerCompat.scheduleAsyncRepeating(
-                        this::collectTelemetry,
-                        20L * telemetryCollectInterval,
-                        20L * telemetryCollectInterval
-                )
+        this.telemetryPipeline = new DeliveryPipeline<>(
+                "telemetry",
+                getLogger(),
+                telemetryQueue::drain,
+                telemetryQueue::requeueFront,
+                telemetryQueue::size,
+                telemetrySpool,
+                telemetryDeadLetter,
+                telemetrySender,
+                breaker,
+                deliveryStats,
+                executor,
+                telemetryBatchSize,
+                getConfig().getInt("api.telemetry-max-batch-size", 1000),
+                targetLatencyMs,
+                maxInFlight
+        );
+        ServerCapabilities capabilities = ServerCapabilities.probe();
+        this.schedulerCompat = new ServerSchedulerCompat(this, capabilities);
+        LatencyHistogram pingHistogram = new LatencyHistogram();
+        LatencyHistogram msptHistogram = new LatencyHistogram();
+        WorldLoadTracker worldLoadTracker = createWorldLoadTracker(capabilities);
+        TickTimings tickTimings = new TickTimings(
+                msptHistogram,
+                getConfig().getLong("collect.spike-threshold-ms", 100L),
+                worldLoadTracker
+        );
+        TickSnapshotter snapshotter = new TickSnapshotter(
+                schedulerCompat,
+                capabilities,
+                pingHistogram,
+                getConfig().getLong("collect.snapshot-budget-us", 500L),
+                5000L
+        );
+        this.jfrTelemetry = new JfrTelemetry(getLogger());
+        if (getConfig().getBoolean("collect.jfr.enabled", true)) {
+            jfrTelemetry.start(
+                    Math.max(1L, getConfig().getLong("collect.jfr.monitor-threshold-ms", 10L)),
+                    Math.max(1, getConfig().getInt("collect.jfr.allocation-samples-per-second", 100))
+            );
+        }
+        this.profiler = createProfiler(capabilities, tickTimings);
+        if (getConfig().getBoolean("collect.listener-timings.enabled", false)) {
+            this.listenerTimings = new ListenerTimings(new HashSet<>(getConfig().getStringList("collect.listener-timings.plugins")));
+        }
+        this.playerSlots = new PlayerSlots(getConfig().getInt("collect.max-players", 1024), statDictionary);
+        this.gameplayMetrics = createGameplayMetrics(playerSlots);
+        this.sessionTracker = new SessionTracker(
+                getLogger(),
+                statsQueue,
+                playerSlots,
+                gameplayMetrics,
+                getConfig().getLong("collect.afk-seconds", 300L)
+        );
+        List<TelemetrySource> telemetrySources = new ArrayList<>(List.of(
+                new DeliveryHealth(
+                        statsQueue,
+                        telemetryQueue,
+                        breaker,
+                        deliveryStats,
+                        Arrays.asList(statsSpool, telemetrySpool, statsDeadLetter, telemetryDeadLetter)
+                ),
+                tickTimings,
+                sessionTracker,
+                createIoRateSampler(),
+                CgroupReader.detect(),
+                jfrTelemetry
+        ));
+        for (TelemetrySource source : new TelemetrySource[]{profiler, worldLoadTracker, listenerTimings}) {
+            if (source != null) {
+                telemetrySources.add(source);
+            }
+        }
+        this.telemetryCollector = new SystemTelemetryCollector(
+                serverId,
+                getLogger(),
+                executor,
+                snapshotter,
+                pingHistogram,
+                msptHistogram,
+                telemetrySources
         );
 
-        int telemetryFlushInterval = Math.max(1, getConfig().getInt("api.telemetry-flush-interval-seconds", 10));
-        scheduledHandles.add(
-                schedulerCompat.scheduleAsyncRepeating(
-                        this::flushTelemetryBatch,
-                        20L * telemetryFlushInterval,
-                        20L * telemetryFlushInterval
-                )
+        Bukkit.getPluginManager().registerEvents(new PlayerEventListener(statsQueue), this);
+        if (gameplayMetrics != null) {
+            gameplayMetrics.register(this, Bukkit.getPluginManager());
+        }
+        sessionTracker.track(Bukkit.getOnlinePlayers());
+        Bukkit.getPluginManager().registerEvents(sessionTracker, this);
+        Bukkit.getPluginManager().registerEvents(tickTimings, this);
+        if (worldLoadTracker != null) {
+            Bukkit.getPluginManager().registerEvents(worldLoadTracker, this);
+            scheduledHandles.add(
+                    capabilities.isRegionized()
+                            ? schedulerCompat.scheduleSyncRepeating(worldLoadTracker::scheduleRegionScan, 20L, 20L)
+                            : schedulerCompat.scheduleSyncRepeating(worldLoadTracker::scanStep, 1L, 1L)
+            );
+        }
+        if (listenerTimings != null) {
+            Bukkit.getPluginManager().registerEvents(listenerTimings, this);
+            // First run happens once the server has finished enabling every plugin; later runs pick up new listeners.
+            scheduledHandles.add(schedulerCompat.scheduleSyncRepeating(listenerTimings::instrument, 1L, 20L * 60L));
+        }
+
+        this.flusher = new AdaptiveFlusher(getLogger(), executor, getConfig().getLong("api.flush-check-ms", 100L));
+        flusher.addLane("stats", statsPipeline, statsQueue::size, this::flushPlayerCounters, getConfig().getLong("api.flush-max-age-ms", 5000L));
+        flusher.addLane("telemetry", telemetryPipeline, telemetryQueue::size, null, getConfig().getLong("api.telemetry-flush-max-age-ms", 10000L));
+        flusher.addPeriodic(
+                "telemetry collection",
+                this::collectTelemetry,
+                1000L * Math.max(1, getConfig().getInt("collect.telemetry-sample-seconds", 10))
+        );
+        flusher.addPeriodic(
+                "player id sweep",
+                new PlayerIdSweeper(statDictionary, statsPipeline, () -> playerSlots.heldPlayerIds()::get, PLAYER_ID_SWEEP_MS),
+                1000L
         );
+        flusher.start();
 
-        getLogger().info("MCStatsPlugin enabled. Target API: " + baseUrl);
+        getLogger().info("MCStatsPlugin enabled. Target API: " + target);
     }
 
     @Override
     public void onDisable() {
+        if (flusher != null) {
+            flusher.stop();
+        }
         for (ServerSchedulerCompat.ScheduledHandle handle : scheduledHandles) {
             handle.cancel();
         }
         scheduledHandles.clear();
+        if (listenerTimings != null) {
+            listenerTimings.restore();
+        }
+        if (jfrTelemetry != null) {
+            jfrTelemetry.close();
+        }
+        if (profiler != null) {
+            profiler.stop();
+        }
 
-        flushStatsBatch();
-        flushTelemetryBatch();
+        // One deadline for everything below, so a slow API cannot stretch the server's shutdown.
+        long started = System.currentTimeMillis();
+        long deadline = started + Math.max(1L, getConfig().getLong("api.shutdown-timeout-ms", 10000L));
+        if (statsPipeline != null) {
+            flushPlayerCounters();
+            statsPipeline.startDrain();
+            telemetryPipeline.startDrain();
+            DeliveryPipeline.DrainReport stats = statsPipeline.finishDrain(remainingMs(deadline));
+            DeliveryPipeline.DrainReport telemetry = telemetryPipeline.finishDrain(remainingMs(deadline));
+            getLogger().info("MCStats shutdown drain finished in " + (System.currentTimeMillis() - started) + " ms: "
+                    + describe(stats, "events") + "; " + describe(telemetry, "telemetry samples"));
+        }
+        closeSpools();
+        if (client != null) {
+            client.close();
+        }
+        if (relayClient != null) {
+            relayClient.close();
+        }
+        if (relay != null) {
+            // Last, so the batches this server just handed over are forwarded or spooled by the relay.
+            relay.close(remainingMs(deadline));
+        }
+        if (executor != null && !executor.shutdown(remainingMs(deadline))) {
+            getLogger().warning("MCStats I/O tasks were still running at shutdown and have been interrupted.");
+        }
     }
 
-    private void collectPlaytime() {
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            statsQueue.offer(player.getUniqueId(), "play_time_seconds", 60);
-        }
+    private static long remainingMs(long deadline) {
+        return Math.max(1L, deadline - System.currentTimeMillis());
+    }
+
+    private static String describe(DeliveryPipeline.DrainReport report, String items) {
+        return report.delivered() + " " + items + " delivered, " + report.spooled() + " spooled, "
+                + report.rejected() + " rejected, " + report.dropped() + " dropped";
     }
 
     private void collectTelemetry() {
-        telemetryQueue.offer(telemetryCollector.collect());
+        telemetryCollector.collectAsync(telemetryQueue::offer);
     }
 
-    private void flushStatsBatch() {
-        List<StatEvent> batch = statsQueue.drain(statsBatchSize);
-        if (batch.isEmpty()) {
-            return;
+    private void flushPlayerCounters() {
+        if (sessionTracker != null) {
+            sessionTracker.flush();
         }
+        if (gameplayMetrics != null) {
+            gameplayMetrics.flush();
+        }
+    }
 
-        boolean success = client.sendEventsBatch(batch);
-        if (!success) {
-            statsQueue.requeueFront(batch);
+    private Relay startRelay(
+            SocketAddress address,
+            String baseUrl,
+            int timeoutMs,
+            String serverId,
+            String apiKey,
+            String secret
+    ) throws IOException {
+        StatDictionary relayDictionary = new StatDictionary();
+        McStatsApiClient upstream = new McStatsApiClient(
+                baseUrl,
+                timeoutMs,
+                getConfig().getBoolean("api.http2", true),
+                McStatsApiClient.Compression.GZIP,
+                getConfig().getInt("api.compression-min-bytes", 1024),
+                "binary".equalsIgnoreCase(getConfig().getString("api.wire-format", "json")),
+                relayDictionary,
+                serverId,
+                apiKey,
+                secret,
+                executor
+        );
+        Relay started = new Relay(
+                getLogger(),
+                executor,
+                address,
+                relayDictionary,
+                upstream,
+                new CircuitBreaker(
+                        getConfig().getInt("api.retry.breaker-failure-threshold", 5),
+                        getConfig().getLong("api.retry.base-delay-ms", 500L),
+                        getConfig().getLong("api.retry.max-delay-ms", 60000L)
+                ),
+                getConfig().getInt("relay.stats-capacity", 262144),
+                getConfig().getInt("relay.telemetry-capacity", 16384),
+                new HashSet<>(getConfig().getStringList("collect.exact-metrics")),
+                getConfig().getBoolean("spool.enabled", true) ? getDataFolder().toPath().resolve("relay-spool") : null,
+                Math.max(1L, getConfig().getLong("spool.max-disk-mb", 256L)) * 1024L * 1024L,
+                getConfig().getInt("relay.batch-size", 5000),
+                getConfig().getInt("relay.telemetry-batch-size", 1000),
+                Math.max(1, getConfig().getInt("api.max-in-flight", 4)),
+                getConfig().getLong("api.target-latency-ms", 1000L),
+                getConfig().getLong("relay.flush-interval-ms", 1000L)
+        );
+        try {
+            started.start();
+        } catch (IOException e) {
+            started.close(1L);
+            throw e;
         }
+        return started;
     }
 
-    private void flushTelemetryBatch() {
-        List<TelemetrySample> batch = telemetryQueue.drain(telemetryBatchSize);
-        if (batch.isEmpty()) {
+    private MainThreadProfiler createProfiler(ServerCapabilities capabilities, TickTimings tickTimings) {
+        if (!getConfig().getBoolean("profiler.enabled", false)) {
+            return null;
+        }
+        if (capabilities.isRegionized()) {
+            getLogger().warning("The main-thread profiler is not supported on Folia and stays disabled.");
+            return null;
+        }
+
+        boolean triggered = "triggered".equalsIgnoreCase(getConfig().getString("profiler.mode", "continuous"));
+        MainThreadProfiler mainThreadProfiler = new MainThreadProfiler(
+                getLogger(),
+                Thread.currentThread(),
+                tickTimings,
+                triggered,
+                getConfig().getLong("profiler.interval-ms", 50L),
+                getConfig().getLong("profiler.trigger-interval-ms", 5L),
+                getConfig().getLong("profiler.trigger-mspt-ms", 50L),
+                getConfig().getInt("profiler.max-depth", 128),
+                getConfig().getInt("profiler.max-nodes", 50000),
+                getDataFolder().toPath().resolve("profiles"),
+                getConfig().getInt("profiler.max-files", 360)
+        );
+        mainThreadProfiler.start(Bukkit.getPluginManager().getPlugins());
+        if (triggered) {
+            // Scheduled tasks run inside a tick, after its start event.
+            schedulerCompat.runSync(mainThreadProfiler::checkTickEvents);
+        }
+        return mainThreadProfiler;
+    }
+
+    private GameplayMetrics createGameplayMetrics(PlayerSlots playerSlots) {
+        if (!getConfig().getBoolean("collect.gameplay.enabled", true)) {
+            return null;
+        }
+
+        List<GameplayMetrics.Binding> bindings = new ArrayList<>();
+        ConfigurationSection metrics = getConfig().getConfigurationSection("collect.gameplay.metrics");
+        if (metrics != null) {
+            for (String key : metrics.getKeys(false)) {
+                GameplaySource source = GameplaySource.parse(key);
+                String metric = metrics.getString(key);
+                if (source == null) {
+                    getLogger().warning("Unknown gameplay metric source '" + key + "', ignoring it.");
+                } else if (metric != null && !metric.isBlank()) {
+                    bindings.add(new GameplayMetrics.Binding(source, metric));
+                }
+            }
+        }
+        if (bindings.isEmpty()) {
+            return null;
+        }
+        return new GameplayMetrics(
+                statsQueue,
+                playerSlots,
+                bindings
+        );
+    }
+
+    private WorldLoadTracker createWorldLoadTracker(ServerCapabilities capabilities) {
+        if (!getConfig().getBoolean("collect.world-load.enabled", true)) {
+            return null;
+        }
+
+        WorldLoadTracker tracker = new WorldLoadTracker(
+                schedulerCompat,
+                getConfig().getInt("collect.world-load.top-chunks", 10),
+                getConfig().getLong("collect.world-load.scan-budget-us", 200L),
+                getConfig().getInt("collect.world-load.scan-batch-chunks", 64),
+                getConfig().getLong("collect.world-load.scan-period-seconds", 30L)
+        );
+        if (!capabilities.isRegionized()) {
+            // Folia cannot walk chunks from one thread; there the counts fill in as chunks and entities load.
+            tracker.seed(Bukkit.getWorlds());
+        }
+        return tracker;
+    }
+
+    private IoRateSampler createIoRateSampler() {
+        OshiDeviceCounters oshi = new OshiDeviceCounters(new SystemInfo().getHardware());
+        boolean procFastPath = getConfig().getBoolean("collect.io.proc-fast-path", true) && ProcDeviceCounters.isSupported();
+        return new IoRateSampler(
+                getLogger(),
+                procFastPath ? new ProcDeviceCounters() : oshi,
+                oshi,
+                new DeviceFilter(
+                        getConfig().getStringList("collect.io.network-include"),
+                        getConfig().getStringList("collect.io.network-exclude")
+                ),
+                new DeviceFilter(
+                        getConfig().getStringList("collect.io.disk-include"),
+                        getConfig().getStringList("collect.io.disk-exclude")
+                ),
+                getConfig().getLong("collect.io.inventory-refresh-seconds", 300L)
+        );
+    }
+
+    private void openSpools() {
+        if (!getConfig().getBoolean("spool.enabled", true)) {
             return;
         }
 
-        boolean success = client.sendTelemetryBatch(batch);
-        if (!success) {
-            telemetryQueue.requeue(batch);
+        Path directory = getDataFolder().toPath().resolve("spool");
+        long segmentBytes = Math.max(1L, getConfig().getLong("spool.segment-mb", 8L)) * 1024L * 1024L;
+        long maxBytes = Math.max(1L, getConfig().getLong("spool.max-disk-mb", 256L)) * 1024L * 1024L;
+        boolean fsync = getConfig().getBoolean("spool.fsync", true);
+        try {
+            this.statsSpool = BatchSpool.open(directory, "stats", SpoolCodecs.statEvents(statDictionary), segmentBytes, maxBytes, fsync);
+            this.telemetrySpool = BatchSpool.open(directory, "telemetry", SpoolCodecs.TELEMETRY_SAMPLES, segmentBytes, maxBytes, fsync);
+            if (getConfig().getBoolean("api.retry.dead-letter", true)) {
+                Path deadLetterDirectory = directory.resolve("dead-letter");
+                this.statsDeadLetter = BatchSpool.open(deadLetterDirectory, "stats", SpoolCodecs.statEvents(statDictionary), segmentBytes, maxBytes, fsync);
+                this.telemetryDeadLetter = BatchSpool.open(deadLetterDirectory, "telemetry", SpoolCodecs.TELEMETRY_SAMPLES, segmentBytes, maxBytes, fsync);
+            }
+        } catch (IOException e) {
+            getLogger().warning("Failed to open delivery spool, undelivered batches will be kept in memory only: " + e.getMessage());
+            closeSpools();
+        }
+    }
+
+    private void closeSpools() {
+        for (BatchSpool<?> spool : new BatchSpool<?>[]{statsSpool, telemetrySpool, statsDeadLetter, telemetryDeadLetter}) {
+            if (spool == null) {
+                continue;
+            }
+            try {
+                spool.close();
+            } catch (IOException e) {
+                getLogger().warning("Failed to close delivery spool: " + e.getMessage());
+            }
         }
+        this.statsSpool = null;
+        this.telemetrySpool = null;
+        this.statsDeadLetter = null;
+        this.telemetryDeadLetter = null;
     }
 }
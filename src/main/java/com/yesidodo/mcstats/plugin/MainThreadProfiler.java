@@ -0,0 +1,273 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.plugin.Plugin;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+public final class MainThreadProfiler implements TelemetrySource {
+    private static final String SERVER_OWNER = "server";
+    private static final int HOT_METHOD_LIMIT = 20;
+    // Lambdas and generated classes keep adding names; past this many, owners are resolved without caching.
+    private static final int MAX_CACHED_CLASSES = 16_384;
+    private static final String NO_OWNER = "";
+
+    private final Logger logger;
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    private final long mainThreadId;
+    private final TickTimings tickTimings;
+    private final long intervalNanos;
+    private final long triggerIntervalNanos;
+    private final long triggerNanos;
+    private final int maxDepth;
+    private final int maxNodes;
+    private final Path outputDirectory;
+    private final int maxFiles;
+    private final List<PluginPrefix> pluginPrefixes = new ArrayList<>();
+    private final Map<String, String> ownerByClass = new HashMap<>();
+    private final Object lock = new Object();
+    private StackTrie trie;
+    private Map<String, Long> samplesByOwner = new HashMap<>();
+    private volatile boolean triggered;
+    private volatile boolean running;
+    private Thread sampler;
+
+    public MainThreadProfiler(
+            Logger logger,
+            Thread mainThread,
+            TickTimings tickTimings,
+            boolean triggered,
+            long intervalMs,
+            long triggerIntervalMs,
+            long triggerMsptMs,
+            int maxDepth,
+            int maxNodes,
+            Path outputDirectory,
+            int maxFiles
+    ) {
+        this.logger = logger;
+        this.mainThreadId = mainThread.threadId();
+        this.tickTimings = tickTimings;
+        this.triggered = triggered;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, intervalMs));
+        this.triggerIntervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, triggerIntervalMs));
+        this.triggerNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, triggerMsptMs));
+        this.maxDepth = Math.max(1, maxDepth);
+        this.maxNodes = Math.max(1, maxNodes);
+        this.outputDirectory = outputDirectory;
+        this.maxFiles = Math.max(0, maxFiles);
+        this.trie = new StackTrie(this.maxNodes);
+    }
+
+    public void start(Plugin[] plugins) {
+        for (Plugin plugin : plugins) {
+            String packageName = plugin.getClass().getPackageName();
+            if (!packageName.isEmpty()) {
+                pluginPrefixes.add(new PluginPrefix(packageName + ".", plugin.getName()));
+            }
+        }
+        // Longest prefix wins when plugins share a parent package.
+        pluginPrefixes.sort(Comparator.comparingInt((PluginPrefix prefix) -> prefix.prefix().length()).reversed());
+
+        running = true;
+        sampler = new Thread(this::run, "MCStats-Profiler");
+        sampler.setDaemon(true);
+        sampler.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (sampler != null) {
+            LockSupport.unpark(sampler);
+            try {
+                sampler.join(1000L);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    // Run on the server thread once ticking has started. Without tick events the current tick length is unknown and
+    // triggered mode would never sample, so it falls back to continuous sampling.
+    public void checkTickEvents() {
+        if (triggered && !tickTimings.receivesTickEvents()) {
+            triggered = false;
+            logger.warning("No server tick events received; the triggered profiler samples continuously every "
+                    + TimeUnit.NANOSECONDS.toMillis(intervalNanos) + " ms instead.");
+        }
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        Window window = takeWindow();
+        sample.set(TelemetryFields.PROFILER_SAMPLES, window.samples())
+                .set(TelemetryFields.PROFILER_TRUNCATED_SAMPLES, window.truncatedSamples());
+        if (window.samples() > 0L) {
+            sample.section(window.plugins()).section(window.hotMethods());
+        }
+    }
+
+    public Window takeWindow() {
+        StackTrie window;
+        Map<String, Long> owners;
+        synchronized (lock) {
+            window = trie;
+            owners = samplesByOwner;
+            trie = new StackTrie(maxNodes);
+            samplesByOwner = new HashMap<>();
+        }
+        if (window.samples() == 0L) {
+            return new Window(0L, 0L, null, null);
+        }
+
+        writeCollapsed(window);
+
+        List<TelemetryRow> ownerRows = new ArrayList<>(owners.size());
+        owners.forEach((owner, samples) -> ownerRows.add(new TelemetryRow(owner, new double[]{
+                samples,
+                samples * 100.0 / window.samples()
+        })));
+
+        List<TelemetryRow> hotRows = new ArrayList<>(HOT_METHOD_LIMIT);
+        window.selfSamplesByFrame().entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                .limit(HOT_METHOD_LIMIT)
+                .forEach(entry -> hotRows.add(new TelemetryRow(entry.getKey(), new double[]{entry.getValue()})));
+
+        return new Window(
+                window.samples(),
+                window.truncatedSamples(),
+                new TelemetrySection("profilerPlugins", List.of("samples", "percent"), ownerRows),
+                new TelemetrySection("profilerHotMethods", List.of("selfSamples"), hotRows)
+        );
+    }
+
+    private void run() {
+        while (running) {
+            boolean waitForSlowTick = triggered;
+            if (!waitForSlowTick || tickTimings.currentTickNanos() >= triggerNanos) {
+                sample();
+            }
+            LockSupport.parkNanos(waitForSlowTick ? triggerIntervalNanos : intervalNanos);
+        }
+    }
+
+    private void sample() {
+        ThreadInfo info = threads.getThreadInfo(mainThreadId, maxDepth);
+        if (info == null) {
+            return;
+        }
+        StackTraceElement[] stack = info.getStackTrace();
+        if (stack.length == 0) {
+            return;
+        }
+
+        String owner = ownerOf(stack);
+        synchronized (lock) {
+            trie.add(stack);
+            samplesByOwner.merge(owner, 1L, Long::sum);
+        }
+    }
+
+    private String ownerOf(StackTraceElement[] stack) {
+        // The innermost plugin frame is the one that spent the time, even when called back from the server.
+        for (StackTraceElement element : stack) {
+            String owner = ownerOf(element.getClassName());
+            if (!owner.isEmpty()) {
+                return owner;
+            }
+        }
+        return SERVER_OWNER;
+    }
+
+    private String ownerOf(String className) {
+        String owner = ownerByClass.get(className);
+        if (owner == null) {
+            owner = resolveOwner(className);
+            if (ownerByClass.size() < MAX_CACHED_CLASSES) {
+                ownerByClass.put(className, owner);
+            }
+        }
+        return owner;
+    }
+
+    private String resolveOwner(String className) {
+        for (PluginPrefix prefix : pluginPrefixes) {
+            if (className.startsWith(prefix.prefix())) {
+                return prefix.plugin();
+            }
+        }
+        return NO_OWNER;
+    }
+
+    private void writeCollapsed(StackTrie window) {
+        if (outputDirectory == null || maxFiles == 0) {
+            return;
+        }
+
+        Path file = outputDirectory.resolve("profile-" + System.currentTimeMillis() + ".collapsed");
+        try {
+            Files.createDirectories(outputDirectory);
+            try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                IOException[] failure = new IOException[1];
+                window.forEachStack((stack, count) -> {
+                    if (failure[0] != null) {
+                        return;
+                    }
+                    try {
+                        writer.write(stack);
+                        writer.write(' ');
+                        writer.write(Long.toString(count));
+                        writer.newLine();
+                    } catch (IOException e) {
+                        failure[0] = e;
+                    }
+                });
+                if (failure[0] != null) {
+                    throw failure[0];
+                }
+            }
+            pruneOldFiles();
+        } catch (IOException e) {
+            logger.warning("Failed to write profiler output: " + e.getMessage());
+        }
+    }
+
+    private void pruneOldFiles() throws IOException {
+        List<Path> files;
+        try (Stream<Path> entries = Files.list(outputDirectory)) {
+            files = entries.filter(path -> path.getFileName().toString().endsWith(".collapsed"))
+                    .sorted()
+                    .toList();
+        }
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    public record Window(
+            long samples,
+            long truncatedSamples,
+            TelemetrySection plugins,
+            TelemetrySection hotMethods
+    ) {
+    }
+
+    private record PluginPrefix(String prefix, String plugin) {
+    }
+}
@@ -9,22 +9,57 @@ import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.HexFormat;
 import java.util.List;
-import java.util.UUID;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 
 public final class McStatsApiClient {
+    private static final int MAX_POOLED_BUFFER_BYTES = 4 * 1024 * 1024;
+    private static final String JSON_CONTENT_TYPE = "application/json";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final HexFormat HEX = HexFormat.of();
+    private static final byte[] GZIP_HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
     private final HttpClient client;
     private final URI eventsEndpoint;
     private final URI telemetryEndpoint;
     private final Duration timeout;
     private final String serverId;
     private final String apiKey;
-    private final String secret;
+    private final SecretKeySpec signingKey;
+    private final Compression compression;
+    private final int compressionMinBytes;
+    private final StatDictionary dictionary;
+    private volatile boolean binaryWire;
+    private final ConcurrentLinkedQueue<RequestBuffers> bufferPool = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed;
 
-    public McStatsApiClient(String baseUrl, int timeoutMs, String serverId, String apiKey, String secret) {
+    public McStatsApiClient(
+            String baseUrl,
+            int timeoutMs,
+            boolean http2,
+            Compression compression,
+            int compressionMinBytes,
+            boolean binaryWire,
+            StatDictionary dictionary,
+            String serverId,
+            String apiKey,
+            String secret,
+            Executor executor
+    ) {
         this.client = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
                 .connectTimeout(Duration.ofMillis(timeoutMs))
+                .executor(executor)
                 .build();
         String normalizedBaseUrl = baseUrl.replaceAll("/+$", "");
         this.eventsEndpoint = URI.create(normalizedBaseUrl + "/v1/events/batch");
@@ -32,127 +67,222 @@ public final class McStatsApiClient {
         this.timeout = Duration.ofMillis(timeoutMs);
         this.serverId = serverId;
         this.apiKey = apiKey;
-        this.secret = secret == null ? "" : secret;
+        this.signingKey = secret == null || secret.isBlank()
+                ? null
+                : new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.compression = compression;
+        this.compressionMinBytes = Math.max(0, compressionMinBytes);
+        this.binaryWire = binaryWire;
+        this.dictionary = dictionary;
     }
 
-    public boolean sendEventsBatch(List<StatEvent> events) {
+    public CompletableFuture<DeliveryResult> sendEventsBatch(List<StatEvent> events, long sequence) {
         if (events.isEmpty()) {
-            return true;
+            return CompletableFuture.completedFuture(DeliveryResult.DELIVERED);
         }
+        return send(
+                eventsEndpoint,
+                idempotencyKey("events", sequence),
+                out -> BatchJsonWriter.writeEvents(out, events, dictionary),
+                out -> BinaryBatchCodec.writeEvents(out, events, dictionary, null)
+        );
+    }
 
-        try {
-            return postJson(eventsEndpoint, toEventsJson(events));
-        } catch (Exception ignored) {
-            return false;
+    public CompletableFuture<DeliveryResult> sendTelemetryBatch(List<TelemetrySample> samples, long sequence) {
+        if (samples.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryResult.DELIVERED);
         }
+        return send(
+                telemetryEndpoint,
+                idempotencyKey("telemetry", sequence),
+                out -> BatchJsonWriter.writeTelemetry(out, samples),
+                out -> BinaryBatchCodec.writeTelemetry(out, samples)
+        );
     }
 
-    public boolean sendTelemetryBatch(List<TelemetrySample> samples) {
-        if (samples.isEmpty()) {
-            return true;
+    private CompletableFuture<DeliveryResult> send(
+            URI endpoint,
+            String idempotencyKey,
+            Consumer<PayloadBuffer> jsonSerializer,
+            Consumer<PayloadBuffer> binarySerializer
+    ) {
+        if (!binaryWire) {
+            return post(endpoint, idempotencyKey, JSON_CONTENT_TYPE, jsonSerializer);
         }
 
+        return post(endpoint, idempotencyKey, BinaryBatchCodec.CONTENT_TYPE, binarySerializer).thenCompose(result -> {
+            if (result.statusCode() != 415) {
+                return CompletableFuture.completedFuture(result);
+            }
+            // The endpoint does not understand the binary encoding: stay on JSON from now on.
+            binaryWire = false;
+            return post(endpoint, idempotencyKey, JSON_CONTENT_TYPE, jsonSerializer);
+        });
+    }
+
+    // Scoped by server id: sequences are seeded from the clock, so servers started in the same millisecond share them.
+    private String idempotencyKey(String kind, long sequence) {
+        return serverId + ":" + kind + "-" + Long.toHexString(sequence);
+    }
+
+    private CompletableFuture<DeliveryResult> post(
+            URI endpoint,
+            String idempotencyKey,
+            String contentType,
+            Consumer<PayloadBuffer> serializer
+    ) {
+        RequestBuffers buffers = acquireBuffers();
         try {
-            return postJson(telemetryEndpoint, toTelemetryJson(samples));
+            PayloadBuffer body = buffers.body;
+            serializer.accept(body);
+
+            HttpRequest.Builder reqBuilder = HttpRequest.newBuilder(endpoint)
+                    .timeout(timeout)
+                    .header("Content-Type", contentType)
+                    .header("X-MCStats-ServerId", serverId)
+                    .header("X-MCStats-ApiKey", apiKey)
+                    .header("X-Idempotency-Key", idempotencyKey);
+
+            if (signingKey != null) {
+                String ts = String.valueOf(Instant.now().getEpochSecond());
+                reqBuilder.header("X-MCStats-Timestamp", ts);
+                reqBuilder.header("X-MCStats-Signature", sign(buffers.mac(signingKey), ts, body));
+            }
+
+            PayloadBuffer wire = body;
+            if (compression == Compression.GZIP && body.size() >= compressionMinBytes) {
+                gzip(body, buffers.compressed, buffers.deflater);
+                wire = buffers.compressed;
+                reqBuilder.header("Content-Encoding", "gzip");
+            }
+
+            HttpRequest request = reqBuilder
+                    .POST(HttpRequest.BodyPublishers.ofByteArray(wire.array(), 0, wire.size()))
+                    .build();
+
+            return client.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                    .thenApply(response -> DeliveryResult.fromStatus(response.statusCode(), retryAfterMs(response)))
+                    .exceptionally(ignored -> DeliveryResult.NETWORK_FAILURE)
+                    .whenComplete((ignored, error) -> releaseBuffers(buffers));
         } catch (Exception ignored) {
-            return false;
+            releaseBuffers(buffers);
+            return CompletableFuture.completedFuture(DeliveryResult.NETWORK_FAILURE);
         }
     }
 
-    private boolean postJson(URI endpoint, String body) throws Exception {
-        HttpRequest.Builder reqBuilder = HttpRequest.newBuilder(endpoint)
-                .timeout(timeout)
-                .header("Content-Type", "application/json")
-                .header("X-MCStats-ServerId", serverId)
-                .header("X-MCStats-ApiKey", apiKey)
-                .header("X-Idempotency-Key", UUID.randomUUID().toString());
-
-        if (!secret.isBlank()) {
-            String ts = String.valueOf(Instant.now().getEpochSecond());
-            String signature = sign(ts + "\n" + body, secret);
-            reqBuilder.header("X-MCStats-Timestamp", ts);
-            reqBuilder.header("X-MCStats-Signature", signature);
+    // Ends the pooled Deflaters, whose native memory the GC does not see. Requests still in flight end theirs on
+    // completion.
+    public void close() {
+        closed = true;
+        RequestBuffers buffers;
+        while ((buffers = bufferPool.poll()) != null) {
+            buffers.deflater.end();
         }
+    }
 
-        HttpRequest request = reqBuilder
-                .POST(HttpRequest.BodyPublishers.ofString(body, StandardCharsets.UTF_8))
-                .build();
+    private RequestBuffers acquireBuffers() {
+        RequestBuffers buffers = bufferPool.poll();
+        return buffers != null ? buffers : new RequestBuffers();
+    }
 
-        HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
-        return response.statusCode() >= 200 && response.statusCode() < 300;
+    private void releaseBuffers(RequestBuffers buffers) {
+        // The body publisher reads straight from these arrays, so they are only reused once the exchange is over.
+        if (closed || buffers.body.capacity() > MAX_POOLED_BUFFER_BYTES || buffers.compressed.capacity() > MAX_POOLED_BUFFER_BYTES) {
+            buffers.deflater.end();
+            return;
+        }
+        buffers.body.reset();
+        buffers.compressed.reset();
+        bufferPool.offer(buffers);
+        // close() may have drained the pool between the check and the offer.
+        if (closed && bufferPool.remove(buffers)) {
+            buffers.deflater.end();
+        }
     }
 
-    private static String toEventsJson(List<StatEvent> events) {
-        StringBuilder sb = new StringBuilder(64 + (events.size() * 90));
-        sb.append("{\"events\":[");
-        for (int i = 0; i < events.size(); i++) {
-            StatEvent e = events.get(i);
-            if (i > 0) {
-                sb.append(',');
-            }
-            sb.append("{\"uuid\":\"")
-                    .append(e.uuid())
-                    .append("\",\"metric\":\"")
-                    .append(escapeJson(e.metric()))
-                    .append("\",\"delta\":")
-                    .append(e.delta())
-                    .append(",\"timestampUtc\":")
-                    .append(e.timestampUtc())
-                    .append('}');
+    private static void gzip(PayloadBuffer source, PayloadBuffer target, Deflater deflater) {
+        deflater.reset();
+        deflater.setInput(source.array(), 0, source.size());
+        deflater.finish();
+
+        target.reset();
+        target.write(GZIP_HEADER, 0, GZIP_HEADER.length);
+        while (!deflater.finished()) {
+            target.ensureCapacity(Math.max(4096, source.size() / 4));
+            int written = deflater.deflate(target.array(), target.size(), target.capacity() - target.size());
+            target.setSize(target.size() + written);
         }
-        sb.append("]}");
-        return sb.toString();
+
+        CRC32 crc = new CRC32();
+        crc.update(source.array(), 0, source.size());
+        writeIntLe(target, (int) crc.getValue());
+        writeIntLe(target, source.size());
     }
 
-    private static String toTelemetryJson(List<TelemetrySample> samples) {
-        StringBuilder sb = new StringBuilder(80 + (samples.size() * 220));
-        sb.append("{\"samples\":[");
-        for (int i = 0; i < samples.size(); i++) {
-            TelemetrySample s = samples.get(i);
-            if (i > 0) {
-                sb.append(',');
-            }
+    private static void writeIntLe(PayloadBuffer target, int value) {
+        target.write(value);
+        target.write(value >>> 8);
+        target.write(value >>> 16);
+        target.write(value >>> 24);
+    }
+
+    private static long retryAfterMs(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse(null);
+        if (value == null || value.isBlank()) {
+            return 0L;
+        }
 
-            sb.append('{')
-                    .append("\"serverId\":\"").append(escapeJson(s.serverId())).append('"')
-                    .append(",\"timestampUtc\":").append(s.timestampUtc());
-
-            appendNullable(sb, "tps", s.tps());
-            appendNullable(sb, "mspt", s.mspt());
-            appendNullable(sb, "cpuUsagePercent", s.cpuUsagePercent());
-            appendNullable(sb, "ramUsedMb", s.ramUsedMb());
-            appendNullable(sb, "ramTotalMb", s.ramTotalMb());
-            appendNullable(sb, "networkRxKbps", s.networkRxKbps());
-            appendNullable(sb, "networkTxKbps", s.networkTxKbps());
-            appendNullable(sb, "diskReadKbps", s.diskReadKbps());
-            appendNullable(sb, "diskWriteKbps", s.diskWriteKbps());
-            appendNullable(sb, "gcCollectionsPerMinute", s.gcCollectionsPerMinute());
-            appendNullable(sb, "threadCount", s.threadCount());
-            appendNullable(sb, "onlinePlayers", s.onlinePlayers());
-            appendNullable(sb, "pingP50Ms", s.pingP50Ms());
-            appendNullable(sb, "pingP95Ms", s.pingP95Ms());
-            appendNullable(sb, "pingP99Ms", s.pingP99Ms());
-
-            sb.append('}');
+        try {
+            return Math.max(0L, Long.parseLong(value.trim()) * 1000L);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            Instant retryAt = ZonedDateTime.parse(value.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            return Math.max(0L, Duration.between(Instant.now(), retryAt).toMillis());
+        } catch (DateTimeParseException ignored) {
+            return 0L;
         }
-        sb.append("]}");
-        return sb.toString();
     }
 
-    private static void appendNullable(StringBuilder sb, String key, Number value) {
-        if (value != null) {
-            sb.append(",\"").append(key).append("\":").append(value);
+    private static String sign(Mac mac, String timestamp, PayloadBuffer body) {
+        // doFinal() resets the Mac, so the keyed instance is ready for the next request.
+        for (int i = 0; i < timestamp.length(); i++) {
+            mac.update((byte) timestamp.charAt(i));
         }
+        mac.update((byte) '\n');
+        mac.update(body.array(), 0, body.size());
+        return HEX.formatHex(mac.doFinal());
     }
 
-    private static String escapeJson(String value) {
-        return value.replace("\\", "\\\\").replace("\"", "\\\"");
+    public enum Compression {
+        NONE,
+        GZIP;
+
+        public static Compression parse(String value) {
+            if (value == null || value.isBlank()) {
+                return NONE;
+            }
+            try {
+                return valueOf(value.trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException ignored) {
+                return NONE;
+            }
+        }
     }
 
-    private static String sign(String payload, String secret) throws Exception {
-        Mac mac = Mac.getInstance("HmacSHA256");
-        mac.init(new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), "HmacSHA256"));
-        byte[] signature = mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
-        return HexFormat.of().formatHex(signature);
+    private static final class RequestBuffers {
+        private final PayloadBuffer body = new PayloadBuffer(16 * 1024);
+        private final PayloadBuffer compressed = new PayloadBuffer(4 * 1024);
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        private Mac mac;
+
+        private Mac mac(SecretKeySpec key) throws Exception {
+            if (mac == null) {
+                Mac keyed = Mac.getInstance(HMAC_ALGORITHM);
+                keyed.init(key);
+                mac = keyed;
+            }
+            return mac;
+        }
     }
 }
@@ -0,0 +1,43 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public final class MetricRegistry {
+    private final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<>();
+    private volatile String[] names = new String[0];
+
+    public int intern(String metric) {
+        Integer id = ids.get(metric);
+        if (id != null) {
+            return id;
+        }
+        return register(metric);
+    }
+
+    public String name(int id) {
+        String[] snapshot = names;
+        if (id < 0 || id >= snapshot.length) {
+            throw new IllegalArgumentException("Unknown metric id: " + id);
+        }
+        return snapshot[id];
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    private synchronized int register(String metric) {
+        Integer existing = ids.get(metric);
+        if (existing != null) {
+            return existing;
+        }
+
+        String[] next = Arrays.copyOf(names, names.length + 1);
+        int id = next.length - 1;
+        next[id] = metric;
+        names = next;
+        ids.put(metric, id);
+        return id;
+    }
+}
@@ -0,0 +1,44 @@
+package com.yesidodo.mcstats.plugin;
+
+import oshi.hardware.HWDiskStore;
+import oshi.hardware.HardwareAbstractionLayer;
+import oshi.hardware.NetworkIF;
+
+import java.util.List;
+
+public final class OshiDeviceCounters implements DeviceCounterSource {
+    private final HardwareAbstractionLayer hardware;
+    private List<HWDiskStore> disks = List.of();
+    private List<NetworkIF> networkIFs = List.of();
+
+    public OshiDeviceCounters(HardwareAbstractionLayer hardware) {
+        this.hardware = hardware;
+    }
+
+    @Override
+    public void refreshInventory() {
+        this.disks = hardware.getDiskStores();
+        this.networkIFs = hardware.getNetworkIFs();
+    }
+
+    @Override
+    public void readNetwork(CounterSink sink) {
+        for (NetworkIF networkIF : networkIFs) {
+            networkIF.updateAttributes();
+            sink.accept(networkIF.getName(), networkIF.getBytesRecv(), networkIF.getBytesSent());
+        }
+    }
+
+    @Override
+    public void readDisks(CounterSink sink) {
+        for (HWDiskStore disk : disks) {
+            disk.updateAttributes();
+            sink.accept(deviceName(disk.getName()), disk.getReadBytes(), disk.getWriteBytes());
+        }
+    }
+
+    // On Linux OSHI names disks by device node (/dev/sda); the basename matches /proc/diskstats and the filter globs.
+    static String deviceName(String name) {
+        return name.substring(name.lastIndexOf('/') + 1);
+    }
+}
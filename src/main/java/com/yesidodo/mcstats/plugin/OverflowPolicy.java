@@ -0,0 +1,20 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.Locale;
+
+public enum OverflowPolicy {
+    DROP_OLDEST,
+    DROP_NEWEST,
+    COALESCE;
+
+    public static OverflowPolicy parse(String value, OverflowPolicy fallback) {
+        if (value == null || value.isBlank()) {
+            return fallback;
+        }
+        try {
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        } catch (IllegalArgumentException ignored) {
+            return fallback;
+        }
+    }
+}
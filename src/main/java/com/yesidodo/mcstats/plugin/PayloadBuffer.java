@@ -0,0 +1,160 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.OutputStream;
+import java.util.Arrays;
+
+public final class PayloadBuffer extends OutputStream {
+    private static final byte[] HEX = "0123456789abcdef".getBytes(java.nio.charset.StandardCharsets.US_ASCII);
+
+    private byte[] bytes;
+    private int size;
+
+    public PayloadBuffer(int initialCapacity) {
+        this.bytes = new byte[Math.max(64, initialCapacity)];
+    }
+
+    public byte[] array() {
+        return bytes;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return bytes.length;
+    }
+
+    public void reset() {
+        size = 0;
+    }
+
+    public void ensureCapacity(int additional) {
+        int required = size + additional;
+        if (required > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(required, bytes.length << 1));
+        }
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureCapacity(1);
+        bytes[size++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] source, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(source, offset, bytes, size, length);
+        size += length;
+    }
+
+    public PayloadBuffer writeByte(char c) {
+        write(c);
+        return this;
+    }
+
+    public PayloadBuffer writeAscii(String value) {
+        int length = value.length();
+        ensureCapacity(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) value.charAt(i);
+        }
+        return this;
+    }
+
+    public PayloadBuffer writeJsonString(String value) {
+        ensureCapacity(value.length() + 2);
+        bytes[size++] = '"';
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensureCapacity(2);
+                bytes[size++] = '\\';
+                bytes[size++] = (byte) c;
+            } else if (c < 0x20) {
+                ensureCapacity(6);
+                bytes[size++] = '\\';
+                bytes[size++] = 'u';
+                bytes[size++] = '0';
+                bytes[size++] = '0';
+                bytes[size++] = HEX[(c >>> 4) & 0xF];
+                bytes[size++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                ensureCapacity(1);
+                bytes[size++] = (byte) c;
+            } else if (c < 0x800) {
+                ensureCapacity(2);
+                bytes[size++] = (byte) (0xC0 | (c >>> 6));
+                bytes[size++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensureCapacity(4);
+                bytes[size++] = (byte) (0xF0 | (codePoint >>> 18));
+                bytes[size++] = (byte) (0x80 | ((codePoint >>> 12) & 0x3F));
+                bytes[size++] = (byte) (0x80 | ((codePoint >>> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (codePoint & 0x3F));
+            } else {
+                char encoded = Character.isSurrogate(c) ? '?' : c;
+                ensureCapacity(3);
+                bytes[size++] = (byte) (0xE0 | (encoded >>> 12));
+                bytes[size++] = (byte) (0x80 | ((encoded >>> 6) & 0x3F));
+                bytes[size++] = (byte) (0x80 | (encoded & 0x3F));
+            }
+        }
+        ensureCapacity(1);
+        bytes[size++] = '"';
+        return this;
+    }
+
+    public PayloadBuffer writeLong(long value) {
+        if (value == Long.MIN_VALUE) {
+            return writeAscii("-9223372036854775808");
+        }
+
+        ensureCapacity(20);
+        if (value < 0L) {
+            bytes[size++] = '-';
+            value = -value;
+        }
+        int digits = 1;
+        for (long remaining = value / 10L; remaining != 0L; remaining /= 10L) {
+            digits++;
+        }
+        int end = size + digits;
+        for (int position = end - 1; position >= size; position--) {
+            bytes[position] = (byte) ('0' + (value % 10L));
+            value /= 10L;
+        }
+        size = end;
+        return this;
+    }
+
+    public PayloadBuffer writeNumber(Number value) {
+        if (value instanceof Double || value instanceof Float) {
+            return writeDouble(value.doubleValue());
+        }
+        return writeLong(value.longValue());
+    }
+
+    public PayloadBuffer writeDouble(double d) {
+        if (!Double.isFinite(d)) {
+            return writeAscii("null");
+        }
+        if (d == Math.rint(d) && Math.abs(d) < 1e15) {
+            // Whole numbers (the common case for counters and ms values) skip Double.toString.
+            return writeLong((long) d).writeAscii(".0");
+        }
+        return writeAscii(Double.toString(d));
+    }
+
+    public PayloadBuffer writeBytes(byte[] source) {
+        write(source, 0, source.length);
+        return this;
+    }
+}
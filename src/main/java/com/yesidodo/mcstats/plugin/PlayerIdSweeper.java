@@ -0,0 +1,37 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+import java.util.function.Supplier;
+
+// Recycles the ids of players whose events have all left the pipeline. Meant to run often: a busy queue is only
+// briefly empty, and a sweep is taken at the first idle moment once the interval has passed.
+public final class PlayerIdSweeper implements Runnable {
+    private final StatDictionary dictionary;
+    private final DeliveryPipeline<StatEvent> pipeline;
+    private final Supplier<IntPredicate> heldIds;
+    private final long intervalNanos;
+    private long lastSweepNanos;
+
+    public PlayerIdSweeper(StatDictionary dictionary, DeliveryPipeline<StatEvent> pipeline, Supplier<IntPredicate> heldIds, long intervalMs) {
+        this.dictionary = dictionary;
+        this.pipeline = pipeline;
+        this.heldIds = heldIds;
+        this.intervalNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, intervalMs));
+        this.lastSweepNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized void run() {
+        long now = System.nanoTime();
+        if (now - lastSweepNanos < intervalNanos) {
+            return;
+        }
+        // Held ids are read first: a slot freed after that had already queued its last events, which isIdle() sees.
+        IntPredicate held = heldIds.get();
+        if (pipeline.isIdle()) {
+            dictionary.sweep(held);
+            lastSweepNanos = now;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.BitSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public final class PlayerSlots {
+    private final StatDictionary dictionary;
+    private final Map<UUID, Integer> slots = new ConcurrentHashMap<>();
+    private final AtomicReferenceArray<UUID> owners;
+    private final AtomicIntegerArray playerIds;
+    // Threads between enter() and exit(); retire() waits for them, so no add lands in a slot after its final flush.
+    private final AtomicIntegerArray writers;
+    private final int[] freeSlots;
+    private int freeCount;
+
+    public PlayerSlots(int capacity, StatDictionary dictionary) {
+        int size = Math.max(1, capacity);
+        this.dictionary = dictionary;
+        this.owners = new AtomicReferenceArray<>(size);
+        this.playerIds = new AtomicIntegerArray(size);
+        this.writers = new AtomicIntegerArray(size);
+        this.freeSlots = new int[size];
+        // Hand out the lowest slots first so occupied slots stay dense.
+        for (int i = 0; i < size; i++) {
+            freeSlots[i] = size - 1 - i;
+        }
+        this.freeCount = size;
+    }
+
+    public int capacity() {
+        return owners.length();
+    }
+
+    public int slotOf(UUID uuid) {
+        Integer slot = slots.get(uuid);
+        return slot == null ? -1 : slot;
+    }
+
+    // Returns the player's slot with this thread registered as a writer, or -1; pair every hit with exit(slot).
+    public int enter(UUID uuid) {
+        Integer slot = slots.get(uuid);
+        if (slot == null) {
+            return -1;
+        }
+        writers.incrementAndGet(slot);
+        // retire() clears the owner before it waits, so either it sees this writer or this check sees the retirement.
+        if (!uuid.equals(owners.get(slot))) {
+            writers.decrementAndGet(slot);
+            return -1;
+        }
+        return slot;
+    }
+
+    // The same registration for a caller walking the slots: returns the slot's owner, or null if it has none. While
+    // registered, the slot cannot be retired and handed to another player.
+    public UUID enterSlot(int slot) {
+        if (owners.get(slot) == null) {
+            return null;
+        }
+        writers.incrementAndGet(slot);
+        UUID owner = owners.get(slot);
+        if (owner == null) {
+            writers.decrementAndGet(slot);
+        }
+        return owner;
+    }
+
+    public void exit(int slot) {
+        writers.decrementAndGet(slot);
+    }
+
+    public int playerId(int slot) {
+        return playerIds.get(slot);
+    }
+
+    public synchronized int assign(UUID uuid) {
+        Integer existing = slots.get(uuid);
+        if (existing != null) {
+            return existing;
+        }
+        if (freeCount == 0) {
+            return -1;
+        }
+
+        int slot = freeSlots[--freeCount];
+        playerIds.set(slot, dictionary.player(uuid));
+        owners.set(slot, uuid);
+        slots.put(uuid, slot);
+        return slot;
+    }
+
+    // Takes the slot away from the player once no writer is left in it. The slot stays reserved, with its player id,
+    // until free(): the caller flushes what it holds in between.
+    public synchronized int retire(UUID uuid) {
+        Integer slot = slots.remove(uuid);
+        if (slot == null) {
+            return -1;
+        }
+
+        owners.set(slot, null);
+        while (writers.get(slot) != 0) {
+            Thread.onSpinWait();
+        }
+        return slot;
+    }
+
+    public synchronized void free(int slot) {
+        freeSlots[freeCount++] = slot;
+    }
+
+    // Player ids of occupied and retired slots, which the dictionary must not recycle.
+    public synchronized BitSet heldPlayerIds() {
+        BitSet free = new BitSet(owners.length());
+        for (int i = 0; i < freeCount; i++) {
+            free.set(freeSlots[i]);
+        }
+        BitSet held = new BitSet();
+        for (int slot = free.nextClearBit(0); slot < owners.length(); slot = free.nextClearBit(slot + 1)) {
+            held.set(playerIds.get(slot));
+        }
+        return held;
+    }
+}
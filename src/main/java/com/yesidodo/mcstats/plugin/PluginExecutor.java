@@ -0,0 +1,61 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// Blocking network and collection work runs on virtual threads owned by the plugin, never on the server's async pool.
+// The timer thread only hands tasks over, so a slow send cannot delay other scheduled work.
+public final class PluginExecutor implements Executor {
+    private final ExecutorService workers;
+    private final ScheduledExecutorService timer;
+
+    public PluginExecutor(String name) {
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-IO-", 0).factory());
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name + "-Timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        workers.execute(task);
+    }
+
+    public ScheduledFuture<?> schedule(Runnable task, long delayMs) {
+        return timer.schedule(() -> handOff(task), Math.max(0L, delayMs), TimeUnit.MILLISECONDS);
+    }
+
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable task, long initialDelayMs, long periodMs) {
+        return timer.scheduleAtFixedRate(() -> handOff(task), Math.max(0L, initialDelayMs), Math.max(1L, periodMs), TimeUnit.MILLISECONDS);
+    }
+
+    // Stops the timer, then waits for running tasks up to the deadline; returns false if some had to be interrupted.
+    public boolean shutdown(long timeoutMs) {
+        timer.shutdownNow();
+        workers.shutdown();
+        try {
+            if (workers.awaitTermination(Math.max(0L, timeoutMs), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        workers.shutdownNow();
+        return false;
+    }
+
+    private void handOff(Runnable task) {
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            // Shutting down.
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.stream.Stream;
+
+public final class ProcDeviceCounters implements DeviceCounterSource {
+    private static final Path NET_DEV = Path.of("/proc/net/dev");
+    private static final Path DISK_STATS = Path.of("/proc/diskstats");
+    private static final Path SYS_BLOCK = Path.of("/sys/block");
+    private static final long SECTOR_BYTES = 512L;
+
+    private byte[] buffer = new byte[16 * 1024];
+    private int length;
+    private int position;
+    private Set<String> wholeDisks;
+
+    public static boolean isSupported() {
+        return Files.isReadable(NET_DEV) && Files.isReadable(DISK_STATS);
+    }
+
+    @Override
+    public void refreshInventory() {
+        // /proc/diskstats lists partitions too; only devices under /sys/block are whole disks.
+        Set<String> disks = new HashSet<>();
+        try (Stream<Path> entries = Files.list(SYS_BLOCK)) {
+            entries.forEach(entry -> disks.add(entry.getFileName().toString()));
+            this.wholeDisks = disks;
+        } catch (IOException | RuntimeException e) {
+            this.wholeDisks = null;
+        }
+    }
+
+    @Override
+    public synchronized void readNetwork(CounterSink sink) throws IOException {
+        load(NET_DEV);
+        skipLine();
+        skipLine();
+        while (position < length) {
+            skipSpaces();
+            int nameStart = position;
+            while (position < length && buffer[position] != ':' && buffer[position] != '\n') {
+                position++;
+            }
+            if (position >= length || buffer[position] != ':') {
+                skipLine();
+                continue;
+            }
+            String name = new String(buffer, nameStart, position - nameStart, StandardCharsets.US_ASCII);
+            position++;
+
+            long rxBytes = nextNumber();
+            for (int i = 0; i < 7; i++) {
+                nextNumber();
+            }
+            long txBytes = nextNumber();
+            skipLine();
+            sink.accept(name, rxBytes, txBytes);
+        }
+    }
+
+    @Override
+    public synchronized void readDisks(CounterSink sink) throws IOException {
+        load(DISK_STATS);
+        Set<String> disks = wholeDisks;
+        while (position < length) {
+            nextNumber();
+            nextNumber();
+            skipSpaces();
+            int nameStart = position;
+            while (position < length && buffer[position] != ' ' && buffer[position] != '\n') {
+                position++;
+            }
+            String name = new String(buffer, nameStart, position - nameStart, StandardCharsets.US_ASCII);
+
+            nextNumber();
+            nextNumber();
+            long sectorsRead = nextNumber();
+            nextNumber();
+            nextNumber();
+            nextNumber();
+            long sectorsWritten = nextNumber();
+            skipLine();
+            if (!name.isEmpty() && (disks == null || disks.contains(name))) {
+                sink.accept(name, sectorsRead * SECTOR_BYTES, sectorsWritten * SECTOR_BYTES);
+            }
+        }
+    }
+
+    private void load(Path path) throws IOException {
+        length = 0;
+        position = 0;
+        try (InputStream in = Files.newInputStream(path)) {
+            int read;
+            while ((read = in.read(buffer, length, buffer.length - length)) >= 0) {
+                length += read;
+                if (length == buffer.length) {
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                }
+            }
+        }
+    }
+
+    private void skipSpaces() {
+        while (position < length && buffer[position] == ' ') {
+            position++;
+        }
+    }
+
+    private void skipLine() {
+        while (position < length && buffer[position] != '\n') {
+            position++;
+        }
+        position++;
+    }
+
+    private long nextNumber() {
+        skipSpaces();
+        long value = 0L;
+        while (position < length) {
+            byte b = buffer[position];
+            if (b < '0' || b > '9') {
+                break;
+            }
+            value = value * 10L + (b - '0');
+            position++;
+        }
+        return value;
+    }
+}
@@ -0,0 +1,314 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.logging.Logger;
+
+// Fans in batches from the backends on one host and forwards them upstream through a single client.
+public final class Relay implements Closeable {
+    private static final long SPOOL_SEGMENT_BYTES = 8L * 1024L * 1024L;
+    private static final long PLAYER_ID_SWEEP_MS = 60_000L;
+
+    private final Logger logger;
+    private final PluginExecutor executor;
+    private final SocketAddress address;
+    private final StatDictionary dictionary;
+    private final StatsQueue statsQueue;
+    private final TelemetryQueue telemetryQueue;
+    private final Path spoolDirectory;
+    private final long spoolMaxBytes;
+    private final McStatsApiClient upstream;
+    private final CircuitBreaker breaker;
+    private final int statsBatchSize;
+    private final int telemetryBatchSize;
+    private final int maxInFlight;
+    private final long targetLatencyMs;
+    private final long flushIntervalMs;
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private BatchSpool<StatEvent> statsSpool;
+    private BatchSpool<TelemetrySample> telemetrySpool;
+    private DeliveryPipeline<StatEvent> statsPipeline;
+    private DeliveryPipeline<TelemetrySample> telemetryPipeline;
+    private ServerSocketChannel server;
+    private ScheduledFuture<?> flushTask;
+    private ScheduledFuture<?> sweepTask;
+    private volatile boolean stopped;
+
+    public Relay(
+            Logger logger,
+            PluginExecutor executor,
+            SocketAddress address,
+            StatDictionary dictionary,
+            McStatsApiClient upstream,
+            CircuitBreaker breaker,
+            int statsCapacity,
+            int telemetryCapacity,
+            Set<String> exactMetrics,
+            Path spoolDirectory,
+            long spoolMaxBytes,
+            int statsBatchSize,
+            int telemetryBatchSize,
+            int maxInFlight,
+            long targetLatencyMs,
+            long flushIntervalMs
+    ) {
+        this.logger = logger;
+        this.executor = executor;
+        this.address = address;
+        this.dictionary = dictionary;
+        // Events keep their backend's server id through the dictionary, so counters merge per server, player and metric.
+        this.statsQueue = new StatsQueue(Math.max(2, statsCapacity), OverflowPolicy.COALESCE, true, exactMetrics, dictionary);
+        this.telemetryQueue = new TelemetryQueue(Math.max(1, telemetryCapacity), OverflowPolicy.DROP_OLDEST);
+        this.upstream = upstream;
+        this.breaker = breaker;
+        this.spoolDirectory = spoolDirectory;
+        this.spoolMaxBytes = spoolMaxBytes;
+        this.statsBatchSize = Math.max(1, statsBatchSize);
+        this.telemetryBatchSize = Math.max(1, telemetryBatchSize);
+        this.maxInFlight = Math.max(1, maxInFlight);
+        this.targetLatencyMs = targetLatencyMs;
+        this.flushIntervalMs = Math.max(10L, flushIntervalMs);
+    }
+
+    public void start() throws IOException {
+        openSpools();
+        DeliveryStats stats = new DeliveryStats();
+        this.statsPipeline = new DeliveryPipeline<>(
+                "relay-stats",
+                logger,
+                statsQueue::drain,
+                statsQueue::requeueFront,
+                statsQueue::size,
+                statsSpool,
+                null,
+                upstream::sendEventsBatch,
+                breaker,
+                stats,
+                executor,
+                statsBatchSize,
+                statsBatchSize,
+                targetLatencyMs,
+                maxInFlight
+        );
+        this.telemetryPipeline = new DeliveryPipeline<>(
+                "relay-telemetry",
+                logger,
+                telemetryQueue::drain,
+                telemetryQueue::requeueFront,
+                telemetryQueue::size,
+                telemetrySpool,
+                null,
+                upstream::sendTelemetryBatch,
+                breaker,
+                stats,
+                executor,
+                telemetryBatchSize,
+                telemetryBatchSize,
+                targetLatencyMs,
+                maxInFlight
+        );
+
+        if (address instanceof UnixDomainSocketAddress unix) {
+            // A socket file left behind by a crashed relay would make bind() fail.
+            Files.deleteIfExists(unix.getPath());
+        }
+        this.server = ServerSocketChannel.open(RelayProtocol.family(address));
+        server.bind(address);
+        // Accepting and serving connections block on socket reads, which is what virtual threads are for.
+        executor.execute(this::acceptLoop);
+        this.flushTask = executor.scheduleAtFixedRate(this::flush, flushIntervalMs, flushIntervalMs);
+        // Players of every backend pass through the relay's dictionary; nothing but queued events holds their ids.
+        PlayerIdSweeper sweeper = new PlayerIdSweeper(dictionary, statsPipeline, () -> id -> false, PLAYER_ID_SWEEP_MS);
+        this.sweepTask = executor.scheduleAtFixedRate(sweeper, 1000L, 1000L);
+        logger.info("MCStats relay listening on " + address);
+    }
+
+    public void flush() {
+        statsPipeline.pump();
+        telemetryPipeline.pump();
+    }
+
+    public void close(long timeoutMs) {
+        stopped = true;
+        closeQuietly(server);
+        for (SocketChannel connection : connections) {
+            closeQuietly(connection);
+        }
+        if (flushTask != null) {
+            flushTask.cancel(false);
+        }
+        if (sweepTask != null) {
+            sweepTask.cancel(false);
+        }
+
+        if (statsPipeline != null) {
+            long started = System.currentTimeMillis();
+            long deadline = started + Math.max(1L, timeoutMs);
+            statsPipeline.startDrain();
+            telemetryPipeline.startDrain();
+            DeliveryPipeline.DrainReport stats = statsPipeline.finishDrain(Math.max(1L, deadline - System.currentTimeMillis()));
+            DeliveryPipeline.DrainReport telemetry = telemetryPipeline.finishDrain(Math.max(1L, deadline - System.currentTimeMillis()));
+            logger.info("MCStats relay drained in " + (System.currentTimeMillis() - started) + " ms: "
+                    + stats.delivered() + " events and " + telemetry.delivered() + " samples delivered, "
+                    + (stats.spooled() + telemetry.spooled()) + " spooled, "
+                    + (stats.rejected() + telemetry.rejected()) + " rejected, "
+                    + (stats.dropped() + telemetry.dropped()) + " dropped");
+        }
+        closeSpools();
+        upstream.close();
+        if (address instanceof UnixDomainSocketAddress unix) {
+            try {
+                Files.deleteIfExists(unix.getPath());
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        close(5000L);
+    }
+
+    private void acceptLoop() {
+        while (!stopped) {
+            SocketChannel connection;
+            try {
+                connection = server.accept();
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                if (!stopped) {
+                    logger.warning("MCStats relay failed to accept a connection: " + e.getMessage());
+                }
+                continue;
+            }
+
+            connections.add(connection);
+            try {
+                executor.execute(() -> serve(connection));
+            } catch (RejectedExecutionException e) {
+                connections.remove(connection);
+                closeQuietly(connection);
+            }
+        }
+    }
+
+    private void serve(SocketChannel connection) {
+        ByteBuffer header = ByteBuffer.allocate(RelayProtocol.HEADER_BYTES);
+        ByteBuffer status = ByteBuffer.allocate(2);
+        byte[] payload = new byte[16 * 1024];
+        try (connection) {
+            while (!stopped) {
+                header.clear();
+                RelayProtocol.readFully(connection, header);
+                header.flip();
+                int length = header.getInt() - 1;
+                int kind = header.get();
+                if (length < 0 || length > RelayProtocol.MAX_FRAME_BYTES) {
+                    logger.warning("MCStats relay dropped a connection that sent a frame of " + length + " bytes");
+                    return;
+                }
+
+                if (payload.length < length) {
+                    payload = new byte[Math.max(length, payload.length * 2)];
+                }
+                RelayProtocol.readFully(connection, ByteBuffer.wrap(payload, 0, length));
+
+                status.clear();
+                status.putShort((short) accept(kind, payload, length)).flip();
+                RelayProtocol.writeFully(connection, status);
+            }
+        } catch (IOException ignored) {
+            // The backend disconnected or the relay is closing.
+        } finally {
+            connections.remove(connection);
+        }
+    }
+
+    private int accept(int kind, byte[] payload, int length) {
+        if (stopped) {
+            return RelayProtocol.STATUS_UNAVAILABLE;
+        }
+
+        try {
+            switch (kind) {
+                case RelayProtocol.KIND_EVENTS -> {
+                    for (StatEvent event : BinaryBatchCodec.readEvents(payload, 0, length, dictionary)) {
+                        statsQueue.offer(event);
+                    }
+                }
+                case RelayProtocol.KIND_TELEMETRY -> {
+                    for (TelemetrySample sample : BinaryBatchCodec.readTelemetry(payload, 0, length)) {
+                        telemetryQueue.offer(sample);
+                    }
+                }
+                default -> {
+                    return RelayProtocol.STATUS_BAD_REQUEST;
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warning("MCStats relay rejected a malformed batch: " + e.getMessage());
+            return RelayProtocol.STATUS_BAD_REQUEST;
+        }
+
+        if (statsQueue.size() >= statsBatchSize || telemetryQueue.size() >= telemetryBatchSize) {
+            try {
+                executor.execute(this::flush);
+            } catch (RejectedExecutionException ignored) {
+                // Closing; close() flushes what is left.
+            }
+        }
+        return RelayProtocol.STATUS_ACCEPTED;
+    }
+
+    private void openSpools() {
+        if (spoolDirectory == null) {
+            return;
+        }
+
+        try {
+            this.statsSpool = BatchSpool.open(spoolDirectory, "stats", SpoolCodecs.statEvents(dictionary), SPOOL_SEGMENT_BYTES, spoolMaxBytes, true);
+            this.telemetrySpool = BatchSpool.open(spoolDirectory, "telemetry", SpoolCodecs.TELEMETRY_SAMPLES, SPOOL_SEGMENT_BYTES, spoolMaxBytes, true);
+        } catch (IOException e) {
+            logger.warning("Failed to open relay spool, undelivered batches will be kept in memory only: " + e.getMessage());
+            closeSpools();
+        }
+    }
+
+    private void closeSpools() {
+        for (BatchSpool<?> spool : new BatchSpool<?>[]{statsSpool, telemetrySpool}) {
+            if (spool == null) {
+                continue;
+            }
+            try {
+                spool.close();
+            } catch (IOException e) {
+                logger.warning("Failed to close relay spool: " + e.getMessage());
+            }
+        }
+        this.statsSpool = null;
+        this.telemetrySpool = null;
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+public final class RelayClient implements Closeable {
+    private final SocketAddress address;
+    private final StatDictionary dictionary;
+    private final String serverId;
+    // One connection, one exchange at a time: frames are small and the relay answers as soon as they are queued.
+    private final ExecutorService executor;
+    private final PayloadBuffer frame = new PayloadBuffer(16 * 1024);
+    private final ByteBuffer status = ByteBuffer.allocate(2);
+    private volatile SocketChannel channel;
+
+    public RelayClient(SocketAddress address, StatDictionary dictionary, String serverId) {
+        this.address = address;
+        this.dictionary = dictionary;
+        this.serverId = serverId;
+        this.executor = Executors.newSingleThreadExecutor(Thread.ofVirtual().name("MCStats-Relay-Client").factory());
+    }
+
+    public CompletableFuture<DeliveryResult> sendEventsBatch(List<StatEvent> events, long sequence) {
+        if (events.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryResult.DELIVERED);
+        }
+        return submit(RelayProtocol.KIND_EVENTS, out -> BinaryBatchCodec.writeEvents(out, events, dictionary, serverId));
+    }
+
+    public CompletableFuture<DeliveryResult> sendTelemetryBatch(List<TelemetrySample> samples, long sequence) {
+        if (samples.isEmpty()) {
+            return CompletableFuture.completedFuture(DeliveryResult.DELIVERED);
+        }
+        return submit(RelayProtocol.KIND_TELEMETRY, out -> BinaryBatchCodec.writeTelemetry(out, samples));
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        // Not synchronized: closing the channel is what unblocks an exchange stuck waiting for the relay.
+        closeChannel();
+    }
+
+    private CompletableFuture<DeliveryResult> submit(int kind, Consumer<PayloadBuffer> serializer) {
+        try {
+            return CompletableFuture.supplyAsync(() -> exchange(kind, serializer), executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.completedFuture(DeliveryResult.NETWORK_FAILURE);
+        }
+    }
+
+    private DeliveryResult exchange(int kind, Consumer<PayloadBuffer> serializer) {
+        frame.reset();
+        frame.ensureCapacity(RelayProtocol.HEADER_BYTES);
+        frame.setSize(RelayProtocol.HEADER_BYTES);
+        serializer.accept(frame);
+        ByteBuffer.wrap(frame.array()).putInt(frame.size() - 4).put((byte) kind);
+
+        try {
+            SocketChannel connection = connect();
+            RelayProtocol.writeFully(connection, ByteBuffer.wrap(frame.array(), 0, frame.size()));
+            status.clear();
+            RelayProtocol.readFully(connection, status);
+            return DeliveryResult.fromStatus(status.flip().getShort(), 0L);
+        } catch (IOException e) {
+            // The relay may have restarted; reconnect on the next batch.
+            closeChannel();
+            return DeliveryResult.NETWORK_FAILURE;
+        }
+    }
+
+    private SocketChannel connect() throws IOException {
+        SocketChannel current = channel;
+        if (current != null && current.isOpen()) {
+            return current;
+        }
+
+        SocketChannel opened = SocketChannel.open(RelayProtocol.family(address));
+        try {
+            opened.connect(address);
+        } catch (IOException e) {
+            opened.close();
+            throw e;
+        }
+        channel = opened;
+        return opened;
+    }
+
+    private void closeChannel() {
+        SocketChannel current = channel;
+        channel = null;
+        if (current == null) {
+            return;
+        }
+        try {
+            current.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+// Entry point of the plugin jar when started with `java -jar`: runs the relay or the local ingest stand-in.
+public final class RelayMain {
+    private static final Logger LOGGER = Logger.getLogger("MCStats");
+
+    private RelayMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 1 && "relay".equals(args[0])) {
+            runRelay(args.length >= 2 ? Path.of(args[1]) : Path.of("relay.properties"));
+        } else if (args.length >= 1 && "ingest".equals(args[0])) {
+            runIngest(args.length >= 2 ? Integer.parseInt(args[1]) : 5000);
+        } else {
+            System.err.println("Usage: java -jar MCStatsPlugin.jar relay [relay.properties]");
+            System.err.println("       java -jar MCStatsPlugin.jar ingest [port]");
+            System.exit(2);
+        }
+    }
+
+    private static void runRelay(Path configFile) throws IOException, InterruptedException {
+        Properties config = new Properties();
+        if (Files.exists(configFile)) {
+            try (Reader reader = Files.newBufferedReader(configFile, StandardCharsets.UTF_8)) {
+                config.load(reader);
+            }
+        } else {
+            LOGGER.warning(configFile + " not found, using defaults");
+        }
+
+        PluginExecutor executor = new PluginExecutor("MCStats-Relay");
+        StatDictionary dictionary = new StatDictionary();
+        McStatsApiClient upstream = new McStatsApiClient(
+                config.getProperty("api.base-url", "http://127.0.0.1:5000"),
+                intValue(config, "api.timeout-ms", 5000),
+                Boolean.parseBoolean(config.getProperty("api.http2", "true")),
+                McStatsApiClient.Compression.GZIP,
+                intValue(config, "api.compression-min-bytes", 1024),
+                "binary".equalsIgnoreCase(config.getProperty("api.wire-format", "binary")),
+                dictionary,
+                config.getProperty("api.server-id", "relay"),
+                config.getProperty("api.api-key", ""),
+                config.getProperty("api.secret", ""),
+                executor
+        );
+        String spoolDirectory = config.getProperty("relay.spool-dir", "relay-spool");
+        Relay relay = new Relay(
+                LOGGER,
+                executor,
+                RelayProtocol.parseAddress(config.getProperty("relay.address", "127.0.0.1:" + RelayProtocol.DEFAULT_PORT)),
+                dictionary,
+                upstream,
+                new CircuitBreaker(
+                        intValue(config, "api.retry.breaker-failure-threshold", 5),
+                        intValue(config, "api.retry.base-delay-ms", 500),
+                        intValue(config, "api.retry.max-delay-ms", 60000)
+                ),
+                intValue(config, "relay.stats-capacity", 262144),
+                intValue(config, "relay.telemetry-capacity", 16384),
+                csv(config.getProperty("relay.exact-metrics", "")),
+                spoolDirectory.isBlank() ? null : Path.of(spoolDirectory),
+                Math.max(1L, intValue(config, "relay.spool-max-mb", 1024)) * 1024L * 1024L,
+                intValue(config, "relay.batch-size", 5000),
+                intValue(config, "relay.telemetry-batch-size", 1000),
+                intValue(config, "api.max-in-flight", 4),
+                intValue(config, "api.target-latency-ms", 1000),
+                intValue(config, "relay.flush-interval-ms", 1000)
+        );
+        relay.start();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        long shutdownTimeoutMs = intValue(config, "relay.shutdown-timeout-ms", 10000);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            relay.close(shutdownTimeoutMs);
+            executor.shutdown(1000L);
+            stopped.countDown();
+        }, "MCStats-Relay-Shutdown"));
+        stopped.await();
+    }
+
+    private static void runIngest(int port) throws IOException, InterruptedException {
+        LocalIngestServer server = new LocalIngestServer(LOGGER, new InetSocketAddress("127.0.0.1", port));
+        server.start();
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop();
+            stopped.countDown();
+        }, "MCStats-Ingest-Shutdown"));
+        stopped.await();
+    }
+
+    private static int intValue(Properties config, String key, int defaultValue) {
+        String value = config.getProperty(key);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            LOGGER.warning("Invalid value for " + key + ": " + value + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    private static Set<String> csv(String value) {
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(entry -> !entry.isEmpty())
+                .collect(Collectors.toCollection(HashSet::new));
+    }
+}
@@ -0,0 +1,63 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ProtocolFamily;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+// Frames are a 4-byte length, a 1-byte kind and a BinaryBatchCodec payload; every frame is answered with a 2-byte status.
+public final class RelayProtocol {
+    public static final int DEFAULT_PORT = 25590;
+    public static final int KIND_EVENTS = 1;
+    public static final int KIND_TELEMETRY = 2;
+    public static final int STATUS_ACCEPTED = 202;
+    public static final int STATUS_BAD_REQUEST = 400;
+    public static final int STATUS_UNAVAILABLE = 503;
+    public static final int HEADER_BYTES = 5;
+    public static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    private static final String UNIX_PREFIX = "unix:";
+
+    private RelayProtocol() {
+    }
+
+    public static SocketAddress parseAddress(String value) {
+        String address = value == null ? "" : value.trim();
+        if (address.startsWith(UNIX_PREFIX)) {
+            return UnixDomainSocketAddress.of(address.substring(UNIX_PREFIX.length()));
+        }
+
+        int colon = address.lastIndexOf(':');
+        String host = colon < 0 ? "127.0.0.1" : address.substring(0, colon);
+        String port = colon < 0 ? address : address.substring(colon + 1);
+        try {
+            return new InetSocketAddress(host.isBlank() ? "127.0.0.1" : host, port.isBlank() ? DEFAULT_PORT : Integer.parseInt(port));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid relay address: " + value);
+        }
+    }
+
+    public static ProtocolFamily family(SocketAddress address) {
+        return address instanceof UnixDomainSocketAddress ? StandardProtocolFamily.UNIX : StandardProtocolFamily.INET;
+    }
+
+    static void readFully(ReadableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Relay connection closed");
+            }
+        }
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.plugin.Plugin;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.function.Consumer;
+
+public final class ServerCapabilities {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.publicLookup();
+    private static final MethodType SCHEDULE_ONCE = MethodType.methodType(Object.class, Plugin.class, Consumer.class);
+    private static final MethodType SCHEDULE_FIXED_RATE =
+            MethodType.methodType(Object.class, Plugin.class, Consumer.class, long.class, long.class);
+    private static final MethodType SCHEDULE_ENTITY =
+            MethodType.methodType(Object.class, Object.class, Plugin.class, Consumer.class, Runnable.class);
+    private static final MethodType EXECUTE_REGION =
+            MethodType.methodType(void.class, Plugin.class, World.class, int.class, int.class, Runnable.class);
+
+    private final boolean regionized;
+
+    private ServerCapabilities(boolean regionized) {
+        this.regionized = regionized;
+    }
+
+    // Resolves every handle now, against the running server, rather than on the first call that needs one.
+    public static ServerCapabilities probe() {
+        Handles.resolve();
+        return new ServerCapabilities(isRegionizedServer());
+    }
+
+    private static Resolved resolve(Server server) {
+        MethodHandle tps = serverGetter(server, "getTPS", double[].class);
+        MethodHandle averageTickTime = serverGetter(server, "getAverageTickTime", double.class);
+
+        MethodHandle globalRun = null;
+        MethodHandle globalRunAtFixedRate = null;
+        Class<?> scheduledTaskType = null;
+        Method globalGetter = findMethod(Server.class, "getGlobalRegionScheduler");
+        Object globalScheduler = invokeGetter(globalGetter, server);
+        if (globalScheduler != null) {
+            Class<?> schedulerType = globalGetter.getReturnType();
+            Method runAtFixedRate = findMethod(schedulerType, "runAtFixedRate", Plugin.class, Consumer.class, long.class, long.class);
+            globalRunAtFixedRate = bind(runAtFixedRate, globalScheduler, SCHEDULE_FIXED_RATE);
+            globalRun = bind(findMethod(schedulerType, "run", Plugin.class, Consumer.class), globalScheduler, SCHEDULE_ONCE);
+            scheduledTaskType = runAtFixedRate == null ? null : runAtFixedRate.getReturnType();
+        }
+
+        MethodHandle entityScheduler = null;
+        MethodHandle entityRun = null;
+        Method getScheduler = globalScheduler == null ? null : findMethod(Entity.class, "getScheduler");
+        if (getScheduler != null) {
+            Method run = findMethod(getScheduler.getReturnType(), "run", Plugin.class, Consumer.class, Runnable.class);
+            entityScheduler = adapt(getScheduler, MethodType.methodType(Object.class, Entity.class));
+            entityRun = adapt(run, SCHEDULE_ENTITY);
+            if (entityScheduler == null || entityRun == null) {
+                entityScheduler = null;
+                entityRun = null;
+            }
+        }
+
+        MethodHandle regionExecute = null;
+        Method regionGetter = globalScheduler == null ? null : findMethod(Server.class, "getRegionScheduler");
+        Object regionScheduler = invokeGetter(regionGetter, server);
+        if (regionScheduler != null) {
+            regionExecute = bind(
+                    findMethod(
+                            regionGetter.getReturnType(),
+                            "execute",
+                            Plugin.class, World.class, int.class, int.class, Runnable.class
+                    ),
+                    regionScheduler,
+                    EXECUTE_REGION
+            );
+        }
+
+        MethodHandle cancel = scheduledTaskType == null
+                ? null
+                : adapt(findMethod(scheduledTaskType, "cancel"), MethodType.methodType(void.class, Object.class));
+
+        return new Resolved(
+                tps,
+                averageTickTime,
+                globalRun,
+                globalRunAtFixedRate,
+                entityScheduler,
+                entityRun,
+                regionExecute,
+                cancel
+        );
+    }
+
+    public boolean isRegionized() {
+        return regionized;
+    }
+
+    public Double tps() {
+        if (Handles.TPS == null) {
+            return null;
+        }
+        try {
+            double[] values = (double[]) Handles.TPS.invokeExact();
+            return values != null && values.length > 0 ? values[0] : null;
+        } catch (Throwable ignored) {
+            // Folia exposes the method but throws UnsupportedOperationException.
+            return null;
+        }
+    }
+
+    public Double averageTickTime() {
+        if (Handles.AVERAGE_TICK_TIME == null) {
+            return null;
+        }
+        try {
+            return (double) Handles.AVERAGE_TICK_TIME.invokeExact();
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    public boolean hasGlobalScheduler() {
+        return Handles.GLOBAL_RUN != null && Handles.GLOBAL_RUN_AT_FIXED_RATE != null;
+    }
+
+    public boolean hasEntitySchedulers() {
+        return Handles.ENTITY_SCHEDULER != null && Handles.ENTITY_RUN != null;
+    }
+
+    public boolean hasRegionScheduler() {
+        return Handles.REGION_EXECUTE != null;
+    }
+
+    public Object runGlobal(Plugin plugin, Consumer<Object> task) {
+        try {
+            return (Object) Handles.GLOBAL_RUN.invokeExact(plugin, (Consumer) task);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    public Object runGlobalAtFixedRate(Plugin plugin, Consumer<Object> task, long delayTicks, long periodTicks) {
+        try {
+            return (Object) Handles.GLOBAL_RUN_AT_FIXED_RATE.invokeExact(plugin, (Consumer) task, delayTicks, periodTicks);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    public Object runOnEntity(Entity entity, Plugin plugin, Consumer<Object> task, Runnable retired) {
+        try {
+            Object scheduler = (Object) Handles.ENTITY_SCHEDULER.invokeExact(entity);
+            return (Object) Handles.ENTITY_RUN.invokeExact(scheduler, plugin, (Consumer) task, retired);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    public boolean runAtChunk(Plugin plugin, World world, int chunkX, int chunkZ, Runnable task) {
+        try {
+            Handles.REGION_EXECUTE.invokeExact(plugin, world, chunkX, chunkZ, task);
+            return true;
+        } catch (Throwable ignored) {
+            return false;
+        }
+    }
+
+    public void cancel(Object scheduledTask) {
+        if (Handles.CANCEL == null || scheduledTask == null) {
+            return;
+        }
+        try {
+            Handles.CANCEL.invokeExact(scheduledTask);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    // Static finals are constants to the JIT, so invokeExact through them compiles to a direct call into the bound
+    // target; instance fields would be reloaded and dispatched through the handle on every call.
+    private static final class Handles {
+        private static final Resolved RESOLVED = ServerCapabilities.resolve(Bukkit.getServer());
+        private static final MethodHandle TPS = RESOLVED.tps();
+        private static final MethodHandle AVERAGE_TICK_TIME = RESOLVED.averageTickTime();
+        private static final MethodHandle GLOBAL_RUN = RESOLVED.globalRun();
+        private static final MethodHandle GLOBAL_RUN_AT_FIXED_RATE = RESOLVED.globalRunAtFixedRate();
+        private static final MethodHandle ENTITY_SCHEDULER = RESOLVED.entityScheduler();
+        private static final MethodHandle ENTITY_RUN = RESOLVED.entityRun();
+        private static final MethodHandle REGION_EXECUTE = RESOLVED.regionExecute();
+        private static final MethodHandle CANCEL = RESOLVED.cancel();
+
+        private Handles() {
+        }
+
+        // Calling this initializes the class.
+        private static void resolve() {
+        }
+    }
+
+    private record Resolved(
+            MethodHandle tps,
+            MethodHandle averageTickTime,
+            MethodHandle globalRun,
+            MethodHandle globalRunAtFixedRate,
+            MethodHandle entityScheduler,
+            MethodHandle entityRun,
+            MethodHandle regionExecute,
+            MethodHandle cancel
+    ) {
+    }
+
+    private static boolean isRegionizedServer() {
+        // Paper also ships the region scheduler API, but only Folia actually splits the world across threads.
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException ignored) {
+            return false;
+        }
+    }
+
+    private static MethodHandle serverGetter(Server server, String name, Class<?> returnType) {
+        MethodHandle getter = adapt(findMethod(Server.class, name), MethodType.methodType(returnType, Server.class));
+        return getter == null ? null : getter.bindTo(server);
+    }
+
+    private static Object invokeGetter(Method method, Server server) {
+        MethodHandle getter = adapt(method, MethodType.methodType(Object.class, Server.class));
+        if (getter == null) {
+            return null;
+        }
+        try {
+            return (Object) getter.invokeExact(server);
+        } catch (Throwable ignored) {
+            return null;
+        }
+    }
+
+    private static Method findMethod(Class<?> owner, String name, Class<?>... parameterTypes) {
+        try {
+            return owner.getMethod(name, parameterTypes);
+        } catch (NoSuchMethodException ignored) {
+            return null;
+        }
+    }
+
+    private static MethodHandle bind(Method method, Object receiver, MethodType type) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            return LOOKUP.unreflect(method).bindTo(receiver).asType(type);
+        } catch (IllegalAccessException | RuntimeException ignored) {
+            return null;
+        }
+    }
+
+    private static MethodHandle adapt(Method method, MethodType type) {
+        if (method == null) {
+            return null;
+        }
+        try {
+            return LOOKUP.unreflect(method).asType(type);
+        } catch (IllegalAccessException | RuntimeException ignored) {
+            return null;
+        }
+    }
+}
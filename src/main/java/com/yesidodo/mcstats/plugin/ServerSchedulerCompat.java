@@ -1,112 +1,61 @@
 package com.yesidodo.mcstats.plugin;
 
 import org.bukkit.Bukkit;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.scheduler.BukkitTask;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.concurrent.TimeUnit;
-
 public final class ServerSchedulerCompat {
     private final Plugin plugin;
-    private final Object globalRegionScheduler;
-    private final Object asyncScheduler;
-    private final Method globalRunAtFixedRateMethod;
-    private final Method asyncRunAtFixedRateMethod;
+    private final ServerCapabilities capabilities;
 
-    public ServerSchedulerCompat(Plugin plugin) {
+    public ServerSchedulerCompat(Plugin plugin, ServerCapabilities capabilities) {
         this.plugin = plugin;
+        this.capabilities = capabilities;
+    }
 
-        Object detectedGlobalScheduler = null;
-        Object detectedAsyncScheduler = null;
-        Method detectedGlobalRunMethod = null;
-        Method detectedAsyncRunMethod = null;
-
-        try {
-            Method getGlobalRegionScheduler = Bukkit.getServer().getClass().getMethod("getGlobalRegionScheduler");
-            detectedGlobalScheduler = getGlobalRegionScheduler.invoke(Bukkit.getServer());
-            detectedGlobalRunMethod = detectedGlobalScheduler.getClass().getMethod(
-                    "runAtFixedRate",
-                    Plugin.class,
-                    java.util.function.Consumer.class,
-                    long.class,
-                    long.class
-            );
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignored) {
-            detectedGlobalScheduler = null;
-            detectedGlobalRunMethod = null;
+    public void runSync(Runnable task) {
+        if (capabilities.hasGlobalScheduler()
+                && capabilities.runGlobal(plugin, ignored -> task.run()) != null) {
+            return;
         }
 
-        try {
-            Method getAsyncScheduler = Bukkit.getServer().getClass().getMethod("getAsyncScheduler");
-            detectedAsyncScheduler = getAsyncScheduler.invoke(Bukkit.getServer());
-            detectedAsyncRunMethod = detectedAsyncScheduler.getClass().getMethod(
-                    "runAtFixedRate",
-                    Plugin.class,
-                    java.util.function.Consumer.class,
-                    long.class,
-                    long.class,
-                    TimeUnit.class
-            );
-        } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignored) {
-            detectedAsyncScheduler = null;
-            detectedAsyncRunMethod = null;
+        Bukkit.getScheduler().runTask(plugin, task);
+    }
+
+    public boolean runOnEntity(Entity entity, Runnable task, Runnable retired) {
+        if (!capabilities.hasEntitySchedulers()) {
+            runSync(task);
+            return true;
         }
 
-        this.globalRegionScheduler = detectedGlobalScheduler;
-        this.asyncScheduler = detectedAsyncScheduler;
-        this.globalRunAtFixedRateMethod = detectedGlobalRunMethod;
-        this.asyncRunAtFixedRateMethod = detectedAsyncRunMethod;
+        // Folia returns null when the entity has already been removed.
+        return capabilities.runOnEntity(entity, plugin, ignored -> task.run(), retired) != null;
     }
 
-    public ScheduledHandle scheduleSyncRepeating(Runnable task, long delayTicks, long periodTicks) {
-        if (globalRegionScheduler != null && globalRunAtFixedRateMethod != null) {
-            try {
-                Object scheduled = globalRunAtFixedRateMethod.invoke(
-                        globalRegionScheduler,
-                        plugin,
-                        (java.util.function.Consumer<Object>) ignored -> task.run(),
-                        delayTicks,
-                        periodTicks
-                );
-                return new ReflectiveHandle(scheduled);
-            } catch (IllegalAccessException | InvocationTargetException ignored) {
-                // Fall through to Bukkit scheduler.
-            }
+    public void runAtChunk(World world, int chunkX, int chunkZ, Runnable task) {
+        if (capabilities.hasRegionScheduler()
+                && capabilities.runAtChunk(plugin, world, chunkX, chunkZ, task)) {
+            return;
         }
 
-        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
-        return new BukkitTaskHandle(bukkitTask);
+        runSync(task);
     }
 
-    public ScheduledHandle scheduleAsyncRepeating(Runnable task, long delayTicks, long periodTicks) {
-        if (asyncScheduler != null && asyncRunAtFixedRateMethod != null) {
-            try {
-                long delayMs = ticksToMillis(delayTicks);
-                long periodMs = ticksToMillis(periodTicks);
-                Object scheduled = asyncRunAtFixedRateMethod.invoke(
-                        asyncScheduler,
-                        plugin,
-                        (java.util.function.Consumer<Object>) ignored -> task.run(),
-                        delayMs,
-                        periodMs,
-                        TimeUnit.MILLISECONDS
-                );
-                return new ReflectiveHandle(scheduled);
-            } catch (IllegalAccessException | InvocationTargetException ignored) {
-                // Fall through to Bukkit scheduler.
+    public ScheduledHandle scheduleSyncRepeating(Runnable task, long delayTicks, long periodTicks) {
+        if (capabilities.hasGlobalScheduler()) {
+            Object scheduled = capabilities.runGlobalAtFixedRate(plugin, ignored -> task.run(), delayTicks, periodTicks);
+            if (scheduled != null) {
+                return new CapabilityHandle(capabilities, scheduled);
             }
+            // Fall through to Bukkit scheduler.
         }
 
-        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimerAsynchronously(plugin, task, delayTicks, periodTicks);
+        BukkitTask bukkitTask = Bukkit.getScheduler().runTaskTimer(plugin, task, delayTicks, periodTicks);
         return new BukkitTaskHandle(bukkitTask);
     }
 
-    private static long ticksToMillis(long ticks) {
-        return ticks * 50L;
-    }
-
     public interface ScheduledHandle {
         void cancel();
     }
@@ -124,20 +73,18 @@ public final class ServerSchedulerCompat {
         }
     }
 
-    private static final class ReflectiveHandle implements ScheduledHandle {
+    private static final class CapabilityHandle implements ScheduledHandle {
+        private final ServerCapabilities capabilities;
         private final Object scheduledTask;
 
-        private ReflectiveHandle(Object scheduledTask) {
+        private CapabilityHandle(ServerCapabilities capabilities, Object scheduledTask) {
+            this.capabilities = capabilities;
             this.scheduledTask = scheduledTask;
         }
 
         @Override
         public void cancel() {
-            try {
-                Method cancel = scheduledTask.getClass().getMethod("cancel");
-                cancel.invoke(scheduledTask);
-            } catch (NoSuchMethodException | IllegalAccessException | InvocationTargetException ignored) {
-            }
+            capabilities.cancel(scheduledTask);
         }
     }
 }
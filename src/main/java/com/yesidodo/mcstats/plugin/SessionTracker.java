@@ -0,0 +1,196 @@
+package com.yesidodo.mcstats.plugin;
+
+import io.papermc.paper.event.player.AsyncChatEvent;
+import org.bukkit.entity.Player;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerCommandPreprocessEvent;
+import org.bukkit.event.player.PlayerEvent;
+import org.bukkit.event.player.PlayerInteractEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.logging.Logger;
+
+public final class SessionTracker implements Listener, TelemetrySource {
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1L);
+
+    private final Logger logger;
+    private final StatsQueue queue;
+    private final PlayerSlots slots;
+    private final GameplayMetrics gameplayMetrics;
+    private final long afkNanos;
+    private final int playTimeMetric;
+    private final int afkTimeMetric;
+    private final AtomicLongArray lastActiveNanos;
+    // Guarded by this; flushes and quits are rare compared to activity updates.
+    private final long[] creditedUntilNanos;
+    private final long[] afkCountedUntilNanos;
+    private final long[] afkRemainderNanos;
+    // Online players who found every slot taken; they get a slot at the next flush after one frees up.
+    private final Set<UUID> waitingForSlot = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean overflowLogged = new AtomicBoolean();
+
+    public SessionTracker(Logger logger, StatsQueue queue, PlayerSlots slots, GameplayMetrics gameplayMetrics, long afkSeconds) {
+        this.logger = logger;
+        this.queue = queue;
+        this.slots = slots;
+        this.gameplayMetrics = gameplayMetrics;
+        this.afkNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, afkSeconds));
+        this.playTimeMetric = queue.dictionary().metric("play_time_seconds");
+        this.afkTimeMetric = queue.dictionary().metric("afk_time_seconds");
+        this.lastActiveNanos = new AtomicLongArray(slots.capacity());
+        this.creditedUntilNanos = new long[slots.capacity()];
+        this.afkCountedUntilNanos = new long[slots.capacity()];
+        this.afkRemainderNanos = new long[slots.capacity()];
+    }
+
+    public void track(Collection<? extends Player> onlinePlayers) {
+        for (Player player : onlinePlayers) {
+            start(player.getUniqueId());
+        }
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onJoin(PlayerJoinEvent event) {
+        start(event.getPlayer().getUniqueId());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onQuit(PlayerQuitEvent event) {
+        UUID uuid = event.getPlayer().getUniqueId();
+        waitingForSlot.remove(uuid);
+        end(uuid);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onMove(PlayerMoveEvent event) {
+        markActive(event);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onInteract(PlayerInteractEvent event) {
+        markActive(event);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onChat(AsyncChatEvent event) {
+        markActive(event);
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onCommand(PlayerCommandPreprocessEvent event) {
+        markActive(event);
+    }
+
+    public void flush() {
+        for (UUID uuid : waitingForSlot) {
+            int slot = slots.assign(uuid);
+            if (slot < 0) {
+                break;
+            }
+            begin(slot);
+            // Whoever removes the entry owns the player: if a quit got there first, the session ends right away.
+            if (!waitingForSlot.remove(uuid)) {
+                end(uuid);
+            }
+        }
+        long now = System.nanoTime();
+        for (int slot = 0; slot < slots.capacity(); slot++) {
+            // Held like a writer until credited, so the seconds and the player id belong to the same session.
+            if (slots.enterSlot(slot) != null) {
+                try {
+                    credit(slot, now, false);
+                } finally {
+                    slots.exit(slot);
+                }
+            }
+        }
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        sample.set(TelemetryFields.PLAYERS_WITHOUT_SLOT, waitingForSlot.size());
+    }
+
+    private void start(UUID uuid) {
+        int slot = slots.assign(uuid);
+        if (slot >= 0) {
+            begin(slot);
+            return;
+        }
+
+        waitingForSlot.add(uuid);
+        if (overflowLogged.compareAndSet(false, true)) {
+            logger.warning("More than " + slots.capacity() + " players online; players without a slot get no playtime"
+                    + " until one frees up (reported as playersWithoutSlot). Raise collect.max-players to track them all.");
+        }
+    }
+
+    private void begin(int slot) {
+        long now = System.nanoTime();
+        lastActiveNanos.set(slot, now);
+        synchronized (this) {
+            creditedUntilNanos[slot] = now;
+            afkCountedUntilNanos[slot] = now;
+            afkRemainderNanos[slot] = 0L;
+        }
+    }
+
+    private void end(UUID uuid) {
+        int slot = slots.retire(uuid);
+        if (slot < 0) {
+            return;
+        }
+
+        credit(slot, System.nanoTime(), true);
+        if (gameplayMetrics != null) {
+            gameplayMetrics.flushSlot(slot);
+        }
+        slots.free(slot);
+    }
+
+    private void markActive(PlayerEvent event) {
+        int slot = slots.slotOf(event.getPlayer().getUniqueId());
+        if (slot >= 0) {
+            lastActiveNanos.lazySet(slot, System.nanoTime());
+        }
+    }
+
+    private void credit(int slot, long now, boolean sessionEnd) {
+        long playSeconds;
+        long afkSeconds;
+        synchronized (this) {
+            long elapsed = now - creditedUntilNanos[slot];
+            // Only whole seconds are credited; the remainder carries over to the next flush, and is rounded on quit.
+            playSeconds = sessionEnd ? (elapsed + SECOND_NANOS / 2L) / SECOND_NANOS : elapsed / SECOND_NANOS;
+            creditedUntilNanos[slot] += playSeconds * SECOND_NANOS;
+
+            long idleFrom = Math.max(afkCountedUntilNanos[slot], lastActiveNanos.get(slot) + afkNanos);
+            if (now > idleFrom) {
+                afkRemainderNanos[slot] += now - idleFrom;
+            }
+            afkCountedUntilNanos[slot] = now;
+            long afk = afkRemainderNanos[slot];
+            afkSeconds = sessionEnd ? (afk + SECOND_NANOS / 2L) / SECOND_NANOS : afk / SECOND_NANOS;
+            afkRemainderNanos[slot] = Math.max(0L, afk - afkSeconds * SECOND_NANOS);
+        }
+
+        int playerId = slots.playerId(slot);
+        if (playSeconds > 0L) {
+            queue.offer(playerId, playTimeMetric, playSeconds);
+        }
+        if (afkSeconds > 0L) {
+            queue.offer(playerId, afkTimeMetric, afkSeconds);
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+public interface SpoolCodec<T> {
+    void write(DataOutput out, T item) throws IOException;
+
+    T read(DataInput in) throws IOException;
+}
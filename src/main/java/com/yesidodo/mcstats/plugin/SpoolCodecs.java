@@ -0,0 +1,166 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+public final class SpoolCodecs {
+    // Set on the field-count byte of telemetry records that are followed by sections; TelemetryFields.MAX_FIELDS keeps
+    // the count itself below it.
+    private static final int SECTIONS_FLAG = 0x80;
+
+    // Records keep full UUIDs and metric names: dictionary ids do not survive a restart. A relayed player's server id
+    // is written as an empty string and the id ahead of the metric name; metric names are never blank, so records
+    // written before server ids existed still read the same.
+    public static SpoolCodec<StatEvent> statEvents(StatDictionary dictionary) {
+        return new SpoolCodec<>() {
+            @Override
+            public void write(DataOutput out, StatEvent event) throws IOException {
+                UUID uuid = dictionary.uuid(event.playerId());
+                out.writeLong(uuid.getMostSignificantBits());
+                out.writeLong(uuid.getLeastSignificantBits());
+                String serverId = dictionary.serverId(event.playerId());
+                if (serverId != null) {
+                    out.writeUTF("");
+                    out.writeUTF(serverId);
+                }
+                out.writeUTF(dictionary.metricName(event.metricId()));
+                out.writeLong(event.delta());
+                out.writeLong(event.timestampUtc());
+            }
+
+            @Override
+            public StatEvent read(DataInput in) throws IOException {
+                UUID uuid = new UUID(in.readLong(), in.readLong());
+                String metric = in.readUTF();
+                String serverId = null;
+                if (metric.isEmpty()) {
+                    serverId = in.readUTF();
+                    metric = in.readUTF();
+                }
+                int playerId = dictionary.player(serverId, uuid);
+                int metricId = dictionary.metric(metric);
+                return new StatEvent(playerId, metricId, in.readLong(), in.readLong());
+            }
+        };
+    }
+
+    public static final SpoolCodec<TelemetrySample> TELEMETRY_SAMPLES = new SpoolCodec<>() {
+        @Override
+        public void write(DataOutput out, TelemetrySample sample) throws IOException {
+            List<TelemetryFields.Field> fields = TelemetryFields.ALL;
+            Number[] values = new Number[fields.size()];
+            byte[] presence = new byte[(fields.size() + 7) / 8];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = sample.get(fields.get(i));
+                if (values[i] != null) {
+                    presence[i >>> 3] |= (byte) (1 << (i & 7));
+                }
+            }
+
+            out.writeUTF(sample.serverId());
+            out.writeLong(sample.timestampUtc());
+            out.writeByte(values.length | SECTIONS_FLAG);
+            out.write(presence);
+            for (int i = 0; i < values.length; i++) {
+                if (values[i] != null) {
+                    writeValue(out, fields.get(i).kind(), values[i]);
+                }
+            }
+            writeSections(out, sample.sections());
+        }
+
+        @Override
+        public TelemetrySample read(DataInput in) throws IOException {
+            List<TelemetryFields.Field> fields = TelemetryFields.ALL;
+            String serverId = in.readUTF();
+            long timestampUtc = in.readLong();
+            int header = in.readUnsignedByte();
+            int storedCount = header & ~SECTIONS_FLAG;
+            byte[] presence = new byte[(storedCount + 7) / 8];
+            in.readFully(presence);
+
+            // Fields are only ever appended, so older records decode with trailing fields left null.
+            Number[] values = new Number[fields.size()];
+            for (int i = 0; i < storedCount; i++) {
+                if ((presence[i >>> 3] & (1 << (i & 7))) == 0) {
+                    continue;
+                }
+                if (i >= fields.size()) {
+                    throw new IOException("Spooled telemetry sample has unknown field index " + i);
+                }
+                values[i] = readValue(in, fields.get(i).kind());
+            }
+            List<TelemetrySection> sections = (header & SECTIONS_FLAG) != 0 ? readSections(in) : List.of();
+            return new TelemetrySample(serverId, timestampUtc, values, sections);
+        }
+    };
+
+    private SpoolCodecs() {
+    }
+
+    private static void writeSections(DataOutput out, List<TelemetrySection> sections) throws IOException {
+        out.writeShort(sections.size());
+        for (TelemetrySection section : sections) {
+            out.writeUTF(section.name());
+            out.writeShort(section.columns().size());
+            for (String column : section.columns()) {
+                out.writeUTF(column);
+            }
+            out.writeInt(section.rows().size());
+            for (TelemetryRow row : section.rows()) {
+                out.writeUTF(row.key());
+                for (double value : row.values()) {
+                    out.writeDouble(value);
+                }
+            }
+        }
+    }
+
+    private static List<TelemetrySection> readSections(DataInput in) throws IOException {
+        int sectionCount = in.readUnsignedShort();
+        List<TelemetrySection> sections = new ArrayList<>(sectionCount);
+        for (int s = 0; s < sectionCount; s++) {
+            String name = in.readUTF();
+            int columnCount = in.readUnsignedShort();
+            List<String> columns = new ArrayList<>(columnCount);
+            for (int c = 0; c < columnCount; c++) {
+                columns.add(in.readUTF());
+            }
+            int rowCount = in.readInt();
+            if (rowCount < 0) {
+                throw new IOException("Spooled telemetry section " + name + " has negative row count");
+            }
+            List<TelemetryRow> rows = new ArrayList<>(Math.min(rowCount, 4096));
+            for (int r = 0; r < rowCount; r++) {
+                String key = in.readUTF();
+                double[] values = new double[columnCount];
+                for (int c = 0; c < columnCount; c++) {
+                    values[c] = in.readDouble();
+                }
+                rows.add(new TelemetryRow(key, values));
+            }
+            sections.add(new TelemetrySection(name, columns, rows));
+        }
+        return sections;
+    }
+
+    private static void writeValue(DataOutput out, TelemetryFields.Kind kind, Number value) throws IOException {
+        switch (kind) {
+            case DOUBLE -> out.writeDouble(value.doubleValue());
+            case INTEGER -> out.writeInt(value.intValue());
+            case LONG -> out.writeLong(value.longValue());
+        }
+    }
+
+    private static Number readValue(DataInput in, TelemetryFields.Kind kind) throws IOException {
+        return switch (kind) {
+            case DOUBLE -> in.readDouble();
+            case INTEGER -> in.readInt();
+            case LONG -> in.readLong();
+        };
+    }
+}
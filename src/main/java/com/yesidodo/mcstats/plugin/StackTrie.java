@@ -0,0 +1,117 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+public final class StackTrie {
+    private final int maxNodes;
+    private final Map<String, Integer> frameIds = new HashMap<>();
+    private final List<String> frames = new ArrayList<>();
+    private final Node root = new Node(-1);
+    private int nodeCount;
+    private long samples;
+    private long truncatedSamples;
+
+    public StackTrie(int maxNodes) {
+        this.maxNodes = Math.max(1, maxNodes);
+    }
+
+    public void add(StackTraceElement[] stack) {
+        samples++;
+        Node node = root;
+        // Stack traces are leaf-first; the trie is rooted at the outermost frame.
+        for (int i = stack.length - 1; i >= 0; i--) {
+            String frame = stack[i].getClassName() + '.' + stack[i].getMethodName();
+            Integer known = frameIds.get(frame);
+            Node child = known == null || node.children == null ? null : node.children.get(known);
+            if (child == null) {
+                // Interned frame names share the budget with nodes; a new node may need a new name too.
+                if (nodeCount + frames.size() + (known == null ? 2 : 1) > maxNodes) {
+                    // Out of memory budget: charge the sample to the deepest frame we already track.
+                    truncatedSamples++;
+                    break;
+                }
+                int frameId = known != null ? known : intern(frame);
+                child = new Node(frameId);
+                if (node.children == null) {
+                    node.children = new HashMap<>(4);
+                }
+                node.children.put(frameId, child);
+                nodeCount++;
+            }
+            node = child;
+        }
+        node.self++;
+    }
+
+    public long samples() {
+        return samples;
+    }
+
+    public long truncatedSamples() {
+        return truncatedSamples;
+    }
+
+    public void forEachStack(ObjLongConsumer<String> consumer) {
+        StringBuilder path = new StringBuilder();
+        if (root.children != null) {
+            for (Node child : root.children.values()) {
+                visit(child, path, consumer);
+            }
+        }
+    }
+
+    public Map<String, Long> selfSamplesByFrame() {
+        Map<String, Long> totals = new HashMap<>();
+        collectSelf(root, totals);
+        return totals;
+    }
+
+    private void visit(Node node, StringBuilder path, ObjLongConsumer<String> consumer) {
+        int length = path.length();
+        if (length > 0) {
+            path.append(';');
+        }
+        path.append(frames.get(node.frameId));
+        if (node.self > 0L) {
+            consumer.accept(path.toString(), node.self);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                visit(child, path, consumer);
+            }
+        }
+        path.setLength(length);
+    }
+
+    private void collectSelf(Node node, Map<String, Long> totals) {
+        if (node.frameId >= 0 && node.self > 0L) {
+            totals.merge(frames.get(node.frameId), node.self, Long::sum);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                collectSelf(child, totals);
+            }
+        }
+    }
+
+    private int intern(String frame) {
+        int id = frames.size();
+        frames.add(frame);
+        frameIds.put(frame, id);
+        return id;
+    }
+
+    private static final class Node {
+        private final int frameId;
+        private Map<Integer, Node> children;
+        private long self;
+
+        private Node(int frameId) {
+            this.frameId = frameId;
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+public final class StatDictionary {
+    private static final int RECLAIMED = -1;
+
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final ConcurrentHashMap<UUID, Integer> playerIds = new ConcurrentHashMap<>();
+    // Players forwarded through a relay are kept apart per backend, so their counters are never merged across servers.
+    private final ConcurrentHashMap<ServerPlayer, Integer> relayedPlayerIds = new ConcurrentHashMap<>();
+    // Queued and in-flight events reference players by id, so an id is only recycled by sweep(), once none can.
+    private volatile PlayerEntry[] players = new PlayerEntry[64];
+    private volatile int epoch;
+    private int nextPlayerId;
+    private int[] freeIds = new int[16];
+    private int freeCount;
+
+    public int player(UUID uuid) {
+        return player(null, uuid);
+    }
+
+    // A null serverId is a player of this server; events of that player are sent under the request's server id.
+    public int player(String serverId, UUID uuid) {
+        Integer id = serverId == null ? playerIds.get(uuid) : relayedPlayerIds.get(new ServerPlayer(serverId, uuid));
+        if (id != null) {
+            PlayerEntry[] snapshot = players;
+            PlayerEntry entry = id < snapshot.length ? snapshot[id] : null;
+            if (entry != null && entry.uuid().equals(uuid) && Objects.equals(entry.serverId(), serverId) && entry.touch(epoch)) {
+                return id;
+            }
+        }
+        return registerPlayer(serverId, uuid);
+    }
+
+    public UUID uuid(int playerId) {
+        return entry(playerId).uuid();
+    }
+
+    public String serverId(int playerId) {
+        return entry(playerId).serverId();
+    }
+
+    public byte[] uuidAscii(int playerId) {
+        return entry(playerId).ascii();
+    }
+
+    public int metric(String name) {
+        return metrics.intern(name);
+    }
+
+    public String metricName(int metricId) {
+        return metrics.name(metricId);
+    }
+
+    // Frees ids not looked up since the previous sweep and not held by `live` (e.g. by player slots). Only call it
+    // while nothing is queued or in flight: an id looked up just before the sweep still gets a full interval to be
+    // queued, and everything queued before it has already been sent.
+    public synchronized int sweep(IntPredicate live) {
+        PlayerEntry[] snapshot = players;
+        int current = epoch;
+        int freed = 0;
+        for (int id = 0; id < nextPlayerId; id++) {
+            PlayerEntry entry = snapshot[id];
+            if (entry == null || live.test(id) || !entry.reclaim(current)) {
+                continue;
+            }
+            if (entry.serverId() == null) {
+                playerIds.remove(entry.uuid(), id);
+            } else {
+                relayedPlayerIds.remove(new ServerPlayer(entry.serverId(), entry.uuid()), id);
+            }
+            snapshot[id] = null;
+            if (freeCount == freeIds.length) {
+                freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+            }
+            freeIds[freeCount++] = id;
+            freed++;
+        }
+        epoch = current + 1;
+        return freed;
+    }
+
+    private PlayerEntry entry(int playerId) {
+        PlayerEntry[] snapshot = players;
+        PlayerEntry entry = playerId >= 0 && playerId < snapshot.length ? snapshot[playerId] : null;
+        if (entry == null) {
+            throw new IllegalArgumentException("Unknown player id: " + playerId);
+        }
+        return entry;
+    }
+
+    private synchronized int registerPlayer(String serverId, UUID uuid) {
+        ServerPlayer key = serverId == null ? null : new ServerPlayer(serverId, uuid);
+        Integer existing = key == null ? playerIds.get(uuid) : relayedPlayerIds.get(key);
+        if (existing != null) {
+            // Mappings are only removed under this lock, so the entry cannot be reclaimed yet.
+            players[existing].touch(epoch);
+            return existing;
+        }
+
+        PlayerEntry[] next = players;
+        int id;
+        if (freeCount > 0) {
+            id = freeIds[--freeCount];
+        } else {
+            if (nextPlayerId == next.length) {
+                next = Arrays.copyOf(next, next.length * 2);
+            }
+            id = nextPlayerId++;
+        }
+        next[id] = new PlayerEntry(uuid, uuid.toString().getBytes(StandardCharsets.US_ASCII), serverId, new AtomicInteger(epoch));
+        // The volatile write publishes the entry before its id becomes visible.
+        players = next;
+        if (key == null) {
+            playerIds.put(uuid, id);
+        } else {
+            relayedPlayerIds.put(key, id);
+        }
+        return id;
+    }
+
+    private record ServerPlayer(String serverId, UUID uuid) {
+    }
+
+    private record PlayerEntry(UUID uuid, byte[] ascii, String serverId, AtomicInteger lastSeenEpoch) {
+        // Fails once the entry is reclaimed; the caller then registers the player again under a fresh id.
+        private boolean touch(int current) {
+            while (true) {
+                int seen = lastSeenEpoch.get();
+                if (seen == current) {
+                    return true;
+                }
+                if (seen == RECLAIMED) {
+                    return false;
+                }
+                if (lastSeenEpoch.compareAndSet(seen, current)) {
+                    return true;
+                }
+            }
+        }
+
+        private boolean reclaim(int current) {
+            int seen = lastSeenEpoch.get();
+            return seen != RECLAIMED && seen < current && lastSeenEpoch.compareAndSet(seen, RECLAIMED);
+        }
+    }
+}
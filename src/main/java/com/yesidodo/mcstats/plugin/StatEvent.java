@@ -1,6 +1,4 @@
 package com.yesidodo.mcstats.plugin;
 
-import java.util.UUID;
-
-public record StatEvent(UUID uuid, String metric, long delta, long timestampUtc) {
+public record StatEvent(int playerId, int metricId, long delta, long timestampUtc) {
 }
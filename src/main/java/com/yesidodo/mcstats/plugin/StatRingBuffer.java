@@ -0,0 +1,92 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+public final class StatRingBuffer {
+    private static final SlotConsumer DISCARD = (playerId, metricId, delta, timestampUtc) -> {
+    };
+
+    private final int mask;
+    private final AtomicLongArray sequences;
+    private final int[] playerIds;
+    private final int[] metricIds;
+    private final long[] deltas;
+    private final long[] timestamps;
+    private final AtomicLong producerPosition = new AtomicLong();
+    private final AtomicLong consumerPosition = new AtomicLong();
+
+    public StatRingBuffer(int requestedCapacity) {
+        int capacity = Integer.highestOneBit(Math.max(2, Math.min(1 << 30, requestedCapacity)) - 1) << 1;
+        this.mask = capacity - 1;
+        this.sequences = new AtomicLongArray(capacity);
+        this.playerIds = new int[capacity];
+        this.metricIds = new int[capacity];
+        this.deltas = new long[capacity];
+        this.timestamps = new long[capacity];
+        for (int i = 0; i < capacity; i++) {
+            sequences.set(i, i);
+        }
+    }
+
+    public int capacity() {
+        return mask + 1;
+    }
+
+    public int size() {
+        long size = producerPosition.get() - consumerPosition.get();
+        return (int) Math.max(0L, Math.min(capacity(), size));
+    }
+
+    public boolean offer(int playerId, int metricId, long delta, long timestampUtc) {
+        long position = producerPosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if (difference == 0L) {
+                if (producerPosition.compareAndSet(position, position + 1)) {
+                    playerIds[index] = playerId;
+                    metricIds[index] = metricId;
+                    deltas[index] = delta;
+                    timestamps[index] = timestampUtc;
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = producerPosition.get();
+            } else if (difference < 0L) {
+                return false;
+            } else {
+                position = producerPosition.get();
+            }
+        }
+    }
+
+    public boolean poll(SlotConsumer consumer) {
+        long position = consumerPosition.get();
+        while (true) {
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if (difference == 0L) {
+                if (consumerPosition.compareAndSet(position, position + 1)) {
+                    consumer.accept(playerIds[index], metricIds[index], deltas[index], timestamps[index]);
+                    sequences.lazySet(index, position + mask + 1);
+                    return true;
+                }
+                position = consumerPosition.get();
+            } else if (difference < 0L) {
+                return false;
+            } else {
+                position = consumerPosition.get();
+            }
+        }
+    }
+
+    public boolean discardOldest() {
+        return poll(DISCARD);
+    }
+
+    @FunctionalInterface
+    public interface SlotConsumer {
+        void accept(int playerId, int metricId, long delta, long timestampUtc);
+    }
+}
@@ -1,44 +1,188 @@
 package com.yesidodo.mcstats.plugin;
 
-import java.time.Instant;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
+import java.util.Set;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 public final class StatsQueue {
-    private final ConcurrentLinkedQueue<StatEvent> queue = new ConcurrentLinkedQueue<>();
+    private final StatRingBuffer ring;
+    private final StatDictionary dictionary;
+    private final OverflowPolicy overflowPolicy;
+    private final boolean aggregate;
+    // Written once here, read-only afterwards.
+    private final BitSet exactMetricIds = new BitSet();
+    private final ArrayDeque<StatEvent> retries = new ArrayDeque<>();
+    private final ArrayDeque<StatEvent> aggregated = new ArrayDeque<>();
+    private final AtomicLong dropped = new AtomicLong();
+    private final int windowCapacity;
+    private volatile AggregationWindow window;
+    private AggregationWindow spareWindow;
+
+    public StatsQueue(
+            int capacity,
+            OverflowPolicy overflowPolicy,
+            boolean aggregate,
+            Set<String> exactMetrics,
+            StatDictionary dictionary
+    ) {
+        this.ring = new StatRingBuffer(capacity);
+        this.dictionary = dictionary;
+        this.overflowPolicy = overflowPolicy;
+        this.aggregate = aggregate;
+        for (String metric : exactMetrics) {
+            exactMetricIds.set(dictionary.metric(metric));
+        }
+        this.windowCapacity = Math.max(16, ring.capacity() / 4);
+        this.window = new AggregationWindow(windowCapacity);
+    }
+
+    public StatDictionary dictionary() {
+        return dictionary;
+    }
 
     public void offer(UUID uuid, String metric, long delta) {
         if (delta == 0L || metric == null || metric.isBlank()) {
             return;
         }
+        offer(dictionary.player(uuid), dictionary.metric(metric), delta);
+    }
+
+    public void offer(int playerId, int metricId, long delta) {
+        if (delta == 0L) {
+            return;
+        }
+
+        if (aggregate && !exactMetricIds.get(metricId) && addToWindow(playerId, metricId, delta)) {
+            return;
+        }
+
+        offerExact(playerId, metricId, delta, System.currentTimeMillis() / 1000L);
+    }
+
+    // Keeps the event's own timestamp when it is not folded into the window, e.g. for events merged by a relay.
+    public void offer(StatEvent event) {
+        if (event.delta() == 0L) {
+            return;
+        }
+
+        if (aggregate && !exactMetricIds.get(event.metricId()) && addToWindow(event.playerId(), event.metricId(), event.delta())) {
+            return;
+        }
 
-        queue.offer(new StatEvent(uuid, metric, delta, Instant.now().getEpochSecond()));
+        offerExact(event.playerId(), event.metricId(), event.delta(), event.timestampUtc());
     }
 
-    public List<StatEvent> drain(int maxItems) {
+    public synchronized List<StatEvent> drain(int maxItems) {
         List<StatEvent> drained = new ArrayList<>(Math.max(1, maxItems));
-        for (int i = 0; i < maxItems; i++) {
-            StatEvent event = queue.poll();
-            if (event == null) {
-                break;
-            }
-            drained.add(event);
+        while (drained.size() < maxItems && !retries.isEmpty()) {
+            drained.add(retries.poll());
+        }
+
+        StatRingBuffer.SlotConsumer collector = (playerId, metricId, delta, timestampUtc) ->
+                drained.add(new StatEvent(playerId, metricId, delta, timestampUtc));
+        while (drained.size() < maxItems && ring.poll(collector)) {
+            // Keep polling until the batch is full or the ring is empty.
+        }
+
+        if (drained.size() < maxItems && aggregated.isEmpty()) {
+            closeWindow();
+        }
+        while (drained.size() < maxItems && !aggregated.isEmpty()) {
+            drained.add(aggregated.poll());
         }
         return drained;
     }
 
-    public void requeueFront(List<StatEvent> failedBatch) {
-        if (failedBatch.isEmpty()) {
+    public synchronized void requeueFront(List<StatEvent> failedBatch) {
+        for (int i = failedBatch.size() - 1; i >= 0; i--) {
+            StatEvent event = failedBatch.get(i);
+            if (retries.size() < ring.capacity()) {
+                retries.addFirst(event);
+            } else if (overflowPolicy != OverflowPolicy.COALESCE
+                    || !addToWindow(event.playerId(), event.metricId(), event.delta())) {
+                dropped.incrementAndGet();
+            }
+        }
+    }
+
+    public synchronized int size() {
+        return retries.size() + ring.size() + aggregated.size() + window.counters.size();
+    }
+
+    public int capacity() {
+        return ring.capacity();
+    }
+
+    public long takeDroppedCount() {
+        return dropped.getAndSet(0L);
+    }
+
+    private void offerExact(int playerId, int metricId, long delta, long timestampUtc) {
+        if (ring.offer(playerId, metricId, delta, timestampUtc)) {
+            return;
+        }
+
+        switch (overflowPolicy) {
+            case COALESCE -> {
+                if (!addToWindow(playerId, metricId, delta)) {
+                    dropped.incrementAndGet();
+                }
+            }
+            case DROP_NEWEST -> dropped.incrementAndGet();
+            case DROP_OLDEST -> {
+                do {
+                    if (ring.discardOldest()) {
+                        dropped.incrementAndGet();
+                    }
+                } while (!ring.offer(playerId, metricId, delta, timestampUtc));
+            }
+        }
+    }
+
+    private boolean addToWindow(int playerId, int metricId, long delta) {
+        long key = ((long) playerId << 32) | (metricId & 0xFFFFFFFFL);
+        while (true) {
+            AggregationWindow current = window;
+            current.writers.increment();
+            try {
+                if (current == window) {
+                    return current.counters.add(key, delta);
+                }
+            } finally {
+                current.writers.decrement();
+            }
+        }
+    }
+
+    private void closeWindow() {
+        AggregationWindow closed = window;
+        if (closed.counters.size() == 0) {
             return;
         }
-        for (StatEvent event : failedBatch) {
-            queue.offer(event);
+
+        AggregationWindow next = spareWindow;
+        window = next != null ? next : new AggregationWindow(windowCapacity);
+        // Writers that saw the old window before the swap must finish before its totals are read.
+        while (closed.writers.sum() != 0L) {
+            Thread.onSpinWait();
         }
+
+        long ts = System.currentTimeMillis() / 1000L;
+        closed.counters.drain((key, delta) -> aggregated.offer(new StatEvent((int) (key >>> 32), (int) key, delta, ts)));
+        spareWindow = closed;
     }
 
-    public int size() {
-        return queue.size();
+    private static final class AggregationWindow {
+        private final CounterTable counters;
+        private final LongAdder writers = new LongAdder();
+
+        private AggregationWindow(int capacity) {
+            this.counters = new CounterTable(capacity);
+        }
     }
 }
@@ -1,97 +1,118 @@
 package com.yesidodo.mcstats.plugin;
 
-import org.bukkit.Bukkit;
-import org.bukkit.entity.Player;
-import oshi.SystemInfo;
-import oshi.hardware.HWDiskStore;
-import oshi.hardware.HardwareAbstractionLayer;
-import oshi.hardware.NetworkIF;
-
 import com.sun.management.OperatingSystemMXBean;
 
 import java.lang.management.ManagementFactory;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
 
 public final class SystemTelemetryCollector {
     private final String serverId;
-    private final HardwareAbstractionLayer hardware;
-    private long lastIoSampleTs;
-    private Long lastDiskReadBytes;
-    private Long lastDiskWriteBytes;
-    private Long lastNetworkRxBytes;
-    private Long lastNetworkTxBytes;
+    private final Logger logger;
+    private final Executor executor;
+    private final TickSnapshotter snapshotter;
+    private final LatencyHistogram pingHistogram;
+    private final LatencyHistogram msptHistogram;
+    private final List<TelemetrySource> sources;
+    private final AtomicBoolean collecting = new AtomicBoolean();
+    private boolean budgetWarned;
     private Long lastGcCollections;
     private long lastGcSampleTs;
 
-    public SystemTelemetryCollector(String serverId) {
+    public SystemTelemetryCollector(
+            String serverId,
+            Logger logger,
+            Executor executor,
+            TickSnapshotter snapshotter,
+            LatencyHistogram pingHistogram,
+            LatencyHistogram msptHistogram,
+            List<TelemetrySource> sources
+    ) {
         this.serverId = serverId;
-        this.hardware = new SystemInfo().getHardware();
+        this.logger = logger;
+        this.executor = executor;
+        this.snapshotter = snapshotter;
+        this.pingHistogram = pingHistogram;
+        this.msptHistogram = msptHistogram;
+        this.sources = List.copyOf(sources);
     }
 
-    public TelemetrySample collect() {
-        long ts = Instant.now().getEpochSecond();
-        Double tps = readTps();
-        Double mspt = readMspt();
-        Double cpuUsage = readCpuUsagePercent();
-        Double ramTotalMb = readTotalMemoryMb();
-        Double ramUsedMb = readUsedMemoryMb(ramTotalMb);
-        IoRateEstimate ioEstimate = estimateIoRates(ts);
-        Double gcCollectionsPerMinute = estimateGcCollectionsPerMinute(ts);
-        Integer threadCount = readThreadCount();
-
-        List<Integer> pings = new ArrayList<>();
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            pings.add(player.getPing());
+    public void collectAsync(Consumer<TelemetrySample> sink) {
+        // Skip this interval if the previous collection has not finished yet.
+        if (!collecting.compareAndSet(false, true)) {
+            return;
         }
-        pings.sort(Comparator.naturalOrder());
-
-        return new TelemetrySample(
-                serverId,
-                ts,
-                tps,
-                mspt,
-                cpuUsage,
-                ramUsedMb,
-                ramTotalMb,
-                ioEstimate.networkRxKbps(),
-                ioEstimate.networkTxKbps(),
-                ioEstimate.diskReadKbps(),
-                ioEstimate.diskWriteKbps(),
-                gcCollectionsPerMinute,
-                threadCount,
-                Bukkit.getOnlinePlayers().size(),
-                percentile(pings, 0.50),
-                percentile(pings, 0.95),
-                percentile(pings, 0.99)
-        );
-    }
 
-    private static Double readTps() {
+        CompletableFuture<TickSnapshot> snapshot;
         try {
-            Object value = Bukkit.getServer().getClass().getMethod("getTPS").invoke(Bukkit.getServer());
-            if (value instanceof double[] tpsArray && tpsArray.length > 0) {
-                return tpsArray[0];
-            }
-        } catch (Exception ignored) {
+            snapshot = snapshotter.capture();
+        } catch (RuntimeException e) {
+            snapshot = CompletableFuture.completedFuture(null);
         }
-        return null;
+        snapshot.exceptionally(error -> null)
+                .thenAcceptAsync(captured -> sink.accept(collect(captured)), executor)
+                .whenComplete((ignored, error) -> {
+                    collecting.set(false);
+                    if (error != null) {
+                        logger.warning("Failed to collect telemetry: " + error.getMessage());
+                    }
+                });
     }
 
-    private static Double readMspt() {
-        try {
-            Object value = Bukkit.getServer().getClass().getMethod("getAverageTickTime").invoke(Bukkit.getServer());
-            if (value instanceof Double d) {
-                return d;
+    private TelemetrySample collect(TickSnapshot snapshot) {
+        long start = System.nanoTime();
+        long ts = Instant.now().getEpochSecond();
+        Double ramTotalMb = readTotalMemoryMb();
+        TelemetrySample.Builder sample = TelemetrySample.builder(serverId, ts)
+                .set(TelemetryFields.CPU_USAGE_PERCENT, readCpuUsagePercent())
+                .set(TelemetryFields.RAM_USED_MB, readUsedMemoryMb(ramTotalMb))
+                .set(TelemetryFields.RAM_TOTAL_MB, ramTotalMb)
+                .set(TelemetryFields.GC_COLLECTIONS_PER_MINUTE, estimateGcCollectionsPerMinute(ts))
+                .set(TelemetryFields.THREAD_COUNT, readThreadCount());
+        if (snapshot != null) {
+            sample.set(TelemetryFields.TPS, snapshot.tps())
+                    .set(TelemetryFields.MSPT, snapshot.mspt())
+                    .set(TelemetryFields.ONLINE_PLAYERS, snapshot.onlinePlayers())
+                    .set(TelemetryFields.COLLECTOR_TICK_MICROS, TimeUnit.NANOSECONDS.toMicros(snapshot.tickNanos()));
+            if (snapshot.truncated() && !budgetWarned) {
+                budgetWarned = true;
+                logger.warning("Telemetry tick snapshot exceeded its time budget; ping percentiles use a partial sample.");
             }
-            if (value instanceof Number n) {
-                return n.doubleValue();
+        }
+
+        LatencyHistogram.Snapshot pings = pingHistogram.snapshotAndReset();
+        sample.set(TelemetryFields.PING_P50_MS, pings.percentile(0.50))
+                .set(TelemetryFields.PING_P95_MS, pings.percentile(0.95))
+                .set(TelemetryFields.PING_P99_MS, pings.percentile(0.99))
+                .set(TelemetryFields.PING_P999_MS, pings.percentile(0.999))
+                .set(TelemetryFields.PING_MAX_MS, pings.max());
+        if (pings.totalCount() > 0L) {
+            sample.section(pings.toSection("pingSketch"));
+        }
+        LatencyHistogram.Snapshot mspt = msptHistogram.snapshotAndReset();
+        sample.set(TelemetryFields.MSPT_P50_MS, microsToMillis(mspt.percentile(0.50)))
+                .set(TelemetryFields.MSPT_P95_MS, microsToMillis(mspt.percentile(0.95)))
+                .set(TelemetryFields.MSPT_P99_MS, microsToMillis(mspt.percentile(0.99)))
+                .set(TelemetryFields.MSPT_P999_MS, microsToMillis(mspt.percentile(0.999)))
+                .set(TelemetryFields.MSPT_MAX_MS, microsToMillis(mspt.max()));
+        if (mspt.totalCount() > 0L) {
+            sample.section(mspt.toSection("msptSketch"));
+        }
+
+        for (TelemetrySource source : sources) {
+            try {
+                source.contribute(sample);
+            } catch (RuntimeException e) {
+                logger.warning("Telemetry source " + source.getClass().getSimpleName() + " failed: " + e.getMessage());
             }
-        } catch (Exception ignored) {
         }
-        return null;
+        return sample.set(TelemetryFields.COLLECTOR_MICROS, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)).build();
     }
 
     private static Double readCpuUsagePercent() {
@@ -122,52 +143,8 @@ public final class SystemTelemetryCollector {
         return null;
     }
 
-    private static Double percentile(List<Integer> sortedValues, double q) {
-        if (sortedValues.isEmpty()) {
-            return null;
-        }
-        int idx = (int) Math.ceil(q * sortedValues.size()) - 1;
-        idx = Math.max(0, Math.min(sortedValues.size() - 1, idx));
-        return (double) sortedValues.get(idx);
-    }
-
-    private IoRateEstimate estimateIoRates(long ts) {
-        long totalDiskRead = 0L;
-        long totalDiskWrite = 0L;
-        for (HWDiskStore disk : hardware.getDiskStores()) {
-            disk.updateAttributes();
-            totalDiskRead += Math.max(0L, disk.getReadBytes());
-            totalDiskWrite += Math.max(0L, disk.getWriteBytes());
-        }
-
-        long totalNetworkRx = 0L;
-        long totalNetworkTx = 0L;
-        for (NetworkIF networkIF : hardware.getNetworkIFs()) {
-            networkIF.updateAttributes();
-            totalNetworkRx += Math.max(0L, networkIF.getBytesRecv());
-            totalNetworkTx += Math.max(0L, networkIF.getBytesSent());
-        }
-
-        Double diskReadKbps = null;
-        Double diskWriteKbps = null;
-        Double networkRxKbps = null;
-        Double networkTxKbps = null;
-        if (lastIoSampleTs > 0 && ts > lastIoSampleTs &&
-                lastDiskReadBytes != null && lastDiskWriteBytes != null &&
-                lastNetworkRxBytes != null && lastNetworkTxBytes != null) {
-            double dt = ts - lastIoSampleTs;
-            diskReadKbps = toKbps(totalDiskRead - lastDiskReadBytes, dt);
-            diskWriteKbps = toKbps(totalDiskWrite - lastDiskWriteBytes, dt);
-            networkRxKbps = toKbps(totalNetworkRx - lastNetworkRxBytes, dt);
-            networkTxKbps = toKbps(totalNetworkTx - lastNetworkTxBytes, dt);
-        }
-
-        lastIoSampleTs = ts;
-        lastDiskReadBytes = totalDiskRead;
-        lastDiskWriteBytes = totalDiskWrite;
-        lastNetworkRxBytes = totalNetworkRx;
-        lastNetworkTxBytes = totalNetworkTx;
-        return new IoRateEstimate(diskReadKbps, diskWriteKbps, networkRxKbps, networkTxKbps);
+    private static Double microsToMillis(Long micros) {
+        return micros == null ? null : micros / 1000.0;
     }
 
     private Double estimateGcCollectionsPerMinute(long ts) {
@@ -194,20 +171,4 @@ public final class SystemTelemetryCollector {
     private static double bytesToMb(long bytes) {
         return bytes / 1024d / 1024d;
     }
-
-    private static Double toKbps(long byteDelta, double dtSeconds) {
-        if (dtSeconds <= 0) {
-            return null;
-        }
-        long normalized = Math.max(0L, byteDelta);
-        return (normalized / 1024.0) / dtSeconds;
-    }
-
-    private record IoRateEstimate(
-            Double diskReadKbps,
-            Double diskWriteKbps,
-            Double networkRxKbps,
-            Double networkTxKbps
-    ) {
-    }
 }
@@ -0,0 +1,107 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class TelemetryFields {
+    // The spool stores the field count in 7 bits, and both wire formats address fields by their position.
+    public static final int MAX_FIELDS = 127;
+
+    private static final List<Field> DECLARED = new ArrayList<>();
+
+    // Fields are only ever appended: their index is their position on the wire and in the spool.
+    public static final Field TPS = field("tps", Kind.DOUBLE);
+    public static final Field MSPT = field("mspt", Kind.DOUBLE);
+    public static final Field CPU_USAGE_PERCENT = field("cpuUsagePercent", Kind.DOUBLE);
+    public static final Field RAM_USED_MB = field("ramUsedMb", Kind.DOUBLE);
+    public static final Field RAM_TOTAL_MB = field("ramTotalMb", Kind.DOUBLE);
+    public static final Field NETWORK_RX_KBPS = field("networkRxKbps", Kind.DOUBLE);
+    public static final Field NETWORK_TX_KBPS = field("networkTxKbps", Kind.DOUBLE);
+    public static final Field DISK_READ_KBPS = field("diskReadKbps", Kind.DOUBLE);
+    public static final Field DISK_WRITE_KBPS = field("diskWriteKbps", Kind.DOUBLE);
+    public static final Field GC_COLLECTIONS_PER_MINUTE = field("gcCollectionsPerMinute", Kind.DOUBLE);
+    public static final Field THREAD_COUNT = field("threadCount", Kind.INTEGER);
+    public static final Field ONLINE_PLAYERS = field("onlinePlayers", Kind.INTEGER);
+    public static final Field PING_P50_MS = field("pingP50Ms", Kind.DOUBLE);
+    public static final Field PING_P95_MS = field("pingP95Ms", Kind.DOUBLE);
+    public static final Field PING_P99_MS = field("pingP99Ms", Kind.DOUBLE);
+    public static final Field DROPPED_EVENTS = field("droppedEvents", Kind.LONG);
+    public static final Field DROPPED_SAMPLES = field("droppedSamples", Kind.LONG);
+    public static final Field CIRCUIT_STATE = field("circuitState", Kind.INTEGER);
+    public static final Field RETRIED_BATCHES = field("retriedBatches", Kind.LONG);
+    public static final Field REJECTED_BATCHES = field("rejectedBatches", Kind.LONG);
+    public static final Field COLLECTOR_TICK_MICROS = field("collectorTickMicros", Kind.LONG);
+    public static final Field COLLECTOR_MICROS = field("collectorMicros", Kind.LONG);
+    public static final Field PING_P999_MS = field("pingP999Ms", Kind.DOUBLE);
+    public static final Field PING_MAX_MS = field("pingMaxMs", Kind.DOUBLE);
+    public static final Field MSPT_P50_MS = field("msptP50Ms", Kind.DOUBLE);
+    public static final Field MSPT_P95_MS = field("msptP95Ms", Kind.DOUBLE);
+    public static final Field MSPT_P99_MS = field("msptP99Ms", Kind.DOUBLE);
+    public static final Field MSPT_P999_MS = field("msptP999Ms", Kind.DOUBLE);
+    public static final Field MSPT_MAX_MS = field("msptMaxMs", Kind.DOUBLE);
+    public static final Field TICK_SPIKES = field("tickSpikes", Kind.LONG);
+    public static final Field CPU_QUOTA_CORES = field("cpuQuotaCores", Kind.DOUBLE);
+    public static final Field CPU_THROTTLED_PERIODS = field("cpuThrottledPeriods", Kind.LONG);
+    public static final Field CPU_THROTTLED_MS = field("cpuThrottledMs", Kind.DOUBLE);
+    public static final Field MEMORY_LIMIT_MB = field("memoryLimitMb", Kind.DOUBLE);
+    public static final Field MEMORY_WORKING_SET_MB = field("memoryWorkingSetMb", Kind.DOUBLE);
+    public static final Field OOM_KILLS = field("oomKills", Kind.LONG);
+    public static final Field CPU_PRESSURE_SOME10 = field("cpuPressureSome10", Kind.DOUBLE);
+    public static final Field MEMORY_PRESSURE_SOME10 = field("memoryPressureSome10", Kind.DOUBLE);
+    public static final Field MEMORY_PRESSURE_FULL10 = field("memoryPressureFull10", Kind.DOUBLE);
+    public static final Field IO_PRESSURE_SOME10 = field("ioPressureSome10", Kind.DOUBLE);
+    public static final Field IO_PRESSURE_FULL10 = field("ioPressureFull10", Kind.DOUBLE);
+    public static final Field GC_PAUSE_COUNT = field("gcPauseCount", Kind.LONG);
+    public static final Field GC_PAUSE_TOTAL_MS = field("gcPauseTotalMs", Kind.DOUBLE);
+    public static final Field GC_PAUSE_P50_MS = field("gcPauseP50Ms", Kind.DOUBLE);
+    public static final Field GC_PAUSE_P99_MS = field("gcPauseP99Ms", Kind.DOUBLE);
+    public static final Field GC_PAUSE_MAX_MS = field("gcPauseMaxMs", Kind.DOUBLE);
+    public static final Field HEAP_AFTER_GC_MB = field("heapAfterGcMb", Kind.DOUBLE);
+    public static final Field ALLOCATION_RATE_MB_PER_SEC = field("allocationRateMbPerSec", Kind.DOUBLE);
+    public static final Field SAFEPOINT_COUNT = field("safepointCount", Kind.LONG);
+    public static final Field SAFEPOINT_TOTAL_MS = field("safepointTotalMs", Kind.DOUBLE);
+    public static final Field MONITOR_CONTENDED_COUNT = field("monitorContendedCount", Kind.LONG);
+    public static final Field MONITOR_CONTENDED_MS = field("monitorContendedMs", Kind.DOUBLE);
+    public static final Field PROFILER_SAMPLES = field("profilerSamples", Kind.LONG);
+    public static final Field PROFILER_TRUNCATED_SAMPLES = field("profilerTruncatedSamples", Kind.LONG);
+    public static final Field SPOOL_MB = field("spoolMb", Kind.DOUBLE);
+    public static final Field SPOOL_DROPPED_SEGMENTS = field("spoolDroppedSegments", Kind.LONG);
+    public static final Field PLAYERS_WITHOUT_SLOT = field("playersWithoutSlot", Kind.INTEGER);
+
+    public static final List<Field> ALL = List.copyOf(DECLARED);
+
+    static {
+        if (ALL.size() > MAX_FIELDS) {
+            throw new IllegalStateException("At most " + MAX_FIELDS + " telemetry fields are supported, found " + ALL.size());
+        }
+    }
+
+    private TelemetryFields() {
+    }
+
+    private static Field field(String name, Kind kind) {
+        Field field = new Field(name, kind, DECLARED.size());
+        DECLARED.add(field);
+        return field;
+    }
+
+    public enum Kind {
+        DOUBLE,
+        INTEGER,
+        LONG
+    }
+
+    public record Field(String name, Kind kind, int index) {
+        // Stores each value with the boxed type of its kind, whatever Number the source produced.
+        public Number normalize(Number value) {
+            if (value == null) {
+                return null;
+            }
+            return switch (kind) {
+                case DOUBLE -> value instanceof Double ? value : (Number) value.doubleValue();
+                case INTEGER -> value instanceof Integer ? value : (Number) value.intValue();
+                case LONG -> value instanceof Long ? value : (Number) value.longValue();
+            };
+        }
+    }
+}
@@ -1,34 +1,62 @@
 package com.yesidodo.mcstats.plugin;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 
 public final class TelemetryQueue {
-    private final ConcurrentLinkedQueue<TelemetrySample> queue = new ConcurrentLinkedQueue<>();
+    private final ArrayDeque<TelemetrySample> queue;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicLong dropped = new AtomicLong();
 
-    public void offer(TelemetrySample sample) {
+    public TelemetryQueue(int capacity, OverflowPolicy overflowPolicy) {
+        this.capacity = Math.max(1, capacity);
+        this.queue = new ArrayDeque<>(this.capacity);
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public synchronized void offer(TelemetrySample sample) {
         if (sample == null || sample.serverId() == null || sample.serverId().isBlank()) {
             return;
         }
-        queue.offer(sample);
+
+        if (queue.size() >= capacity) {
+            // Samples are already point-in-time aggregates, so COALESCE behaves like DROP_OLDEST here.
+            dropped.incrementAndGet();
+            if (overflowPolicy == OverflowPolicy.DROP_NEWEST) {
+                return;
+            }
+            queue.pollFirst();
+        }
+        queue.offerLast(sample);
     }
 
-    public List<TelemetrySample> drain(int maxItems) {
+    public synchronized List<TelemetrySample> drain(int maxItems) {
         List<TelemetrySample> drained = new ArrayList<>(Math.max(1, maxItems));
-        for (int i = 0; i < maxItems; i++) {
-            TelemetrySample sample = queue.poll();
-            if (sample == null) {
-                break;
-            }
-            drained.add(sample);
+        while (drained.size() < maxItems && !queue.isEmpty()) {
+            drained.add(queue.pollFirst());
         }
         return drained;
     }
 
-    public void requeue(List<TelemetrySample> failedBatch) {
-        for (TelemetrySample sample : failedBatch) {
-            queue.offer(sample);
+    public synchronized void requeueFront(List<TelemetrySample> failedBatch) {
+        for (int i = failedBatch.size() - 1; i >= 0; i--) {
+            if (queue.size() >= capacity) {
+                // The batch is older than anything queued, so it is what DROP_OLDEST would evict anyway.
+                dropped.incrementAndGet();
+                continue;
+            }
+            queue.offerFirst(failedBatch.get(i));
         }
     }
+
+    public synchronized int size() {
+        return queue.size();
+    }
+
+    public long takeDroppedCount() {
+        return dropped.getAndSet(0L);
+    }
 }
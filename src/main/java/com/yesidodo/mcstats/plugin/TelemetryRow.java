@@ -0,0 +1,20 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.Arrays;
+
+public record TelemetryRow(String key, double[] values) {
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof TelemetryRow row && key.equals(row.key) && Arrays.equals(values, row.values);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * key.hashCode() + Arrays.hashCode(values);
+    }
+
+    @Override
+    public String toString() {
+        return "TelemetryRow[key=" + key + ", values=" + Arrays.toString(values) + "]";
+    }
+}
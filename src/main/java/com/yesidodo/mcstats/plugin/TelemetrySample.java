@@ -1,22 +1,65 @@
 package com.yesidodo.mcstats.plugin;
 
+import java.util.ArrayList;
+import java.util.List;
+
+// Scalar values are indexed by TelemetryFields descriptors, so a value can only be stored under the field it names.
 public record TelemetrySample(
         String serverId,
         long timestampUtc,
-        Double tps,
-        Double mspt,
-        Double cpuUsagePercent,
-        Double ramUsedMb,
-        Double ramTotalMb,
-        Double networkRxKbps,
-        Double networkTxKbps,
-        Double diskReadKbps,
-        Double diskWriteKbps,
-        Double gcCollectionsPerMinute,
-        Integer threadCount,
-        Integer onlinePlayers,
-        Double pingP50Ms,
-        Double pingP95Ms,
-        Double pingP99Ms
+        Number[] values,
+        List<TelemetrySection> sections
 ) {
+    public TelemetrySample {
+        if (values.length != TelemetryFields.ALL.size()) {
+            throw new IllegalArgumentException("Expected " + TelemetryFields.ALL.size() + " telemetry values, got " + values.length);
+        }
+        Number[] normalized = new Number[values.length];
+        for (int i = 0; i < values.length; i++) {
+            normalized[i] = TelemetryFields.ALL.get(i).normalize(values[i]);
+        }
+        values = normalized;
+        sections = sections == null ? List.of() : List.copyOf(sections);
+    }
+
+    public static Builder builder(String serverId, long timestampUtc) {
+        return new Builder(serverId, timestampUtc);
+    }
+
+    public Number get(TelemetryFields.Field field) {
+        return values[field.index()];
+    }
+
+    @Override
+    public Number[] values() {
+        return values.clone();
+    }
+
+    public static final class Builder {
+        private final String serverId;
+        private final long timestampUtc;
+        private final Number[] values = new Number[TelemetryFields.ALL.size()];
+        private final List<TelemetrySection> sections = new ArrayList<>();
+
+        private Builder(String serverId, long timestampUtc) {
+            this.serverId = serverId;
+            this.timestampUtc = timestampUtc;
+        }
+
+        public Builder set(TelemetryFields.Field field, Number value) {
+            values[field.index()] = value;
+            return this;
+        }
+
+        public Builder section(TelemetrySection section) {
+            if (section != null) {
+                sections.add(section);
+            }
+            return this;
+        }
+
+        public TelemetrySample build() {
+            return new TelemetrySample(serverId, timestampUtc, values, sections);
+        }
+    }
 }
@@ -0,0 +1,16 @@
+package com.yesidodo.mcstats.plugin;
+
+import java.util.List;
+
+public record TelemetrySection(String name, List<String> columns, List<TelemetryRow> rows) {
+    public TelemetrySection {
+        columns = List.copyOf(columns);
+        rows = List.copyOf(rows);
+        for (TelemetryRow row : rows) {
+            if (row.values().length != columns.size()) {
+                throw new IllegalArgumentException("Row " + row.key() + " of section " + name + " has "
+                        + row.values().length + " values for " + columns.size() + " columns");
+            }
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.yesidodo.mcstats.plugin;
+
+// A component that reports its own fields and sections into each telemetry sample, on the collector thread.
+@FunctionalInterface
+public interface TelemetrySource {
+    void contribute(TelemetrySample.Builder sample);
+}
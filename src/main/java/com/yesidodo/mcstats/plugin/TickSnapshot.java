@@ -0,0 +1,11 @@
+package com.yesidodo.mcstats.plugin;
+
+public record TickSnapshot(
+        int onlinePlayers,
+        int sampledPings,
+        Double tps,
+        Double mspt,
+        long tickNanos,
+        boolean truncated
+) {
+}
@@ -0,0 +1,130 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+public final class TickSnapshotter {
+    private static final int BUDGET_CHECK_INTERVAL = 32;
+
+    private final ServerSchedulerCompat scheduler;
+    private final ServerCapabilities capabilities;
+    private final LatencyHistogram pingHistogram;
+    private final long budgetNanos;
+    private final long timeoutMs;
+
+    public TickSnapshotter(
+            ServerSchedulerCompat scheduler,
+            ServerCapabilities capabilities,
+            LatencyHistogram pingHistogram,
+            long budgetMicros,
+            long timeoutMs
+    ) {
+        this.scheduler = scheduler;
+        this.capabilities = capabilities;
+        this.pingHistogram = pingHistogram;
+        this.budgetNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1L, budgetMicros));
+        this.timeoutMs = Math.max(1L, timeoutMs);
+    }
+
+    public CompletableFuture<TickSnapshot> capture() {
+        CompletableFuture<TickSnapshot> result = new CompletableFuture<>();
+        scheduler.runSync(() -> {
+            try {
+                if (capabilities.isRegionized() && capabilities.hasEntitySchedulers()) {
+                    captureRegionized(result);
+                } else {
+                    result.complete(captureOnMainThread());
+                }
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        // A stalled tick loop must not stall telemetry; the sample is then sent without game-side fields.
+        return result.completeOnTimeout(null, timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    private TickSnapshot captureOnMainThread() {
+        long start = System.nanoTime();
+        Double tps = capabilities.tps();
+        Double mspt = capabilities.averageTickTime();
+        Collection<? extends Player> players = Bukkit.getOnlinePlayers();
+        int count = 0;
+        boolean truncated = false;
+        for (Player player : players) {
+            if (count % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() - start > budgetNanos) {
+                truncated = true;
+                break;
+            }
+            pingHistogram.record(player.getPing());
+            count++;
+        }
+
+        return new TickSnapshot(
+                players.size(),
+                count,
+                tps,
+                mspt,
+                System.nanoTime() - start,
+                truncated
+        );
+    }
+
+    private void captureRegionized(CompletableFuture<TickSnapshot> result) {
+        long start = System.nanoTime();
+        Double tps = capabilities.tps();
+        Double mspt = capabilities.averageTickTime();
+        List<Player> players = List.copyOf(Bukkit.getOnlinePlayers());
+        AtomicInteger sampled = new AtomicInteger();
+        LongAdder regionNanos = new LongAdder();
+        AtomicInteger remaining = new AtomicInteger(players.size() + 1);
+        AtomicBoolean truncated = new AtomicBoolean();
+
+        Runnable done = () -> {
+            if (remaining.decrementAndGet() == 0) {
+                result.complete(new TickSnapshot(
+                        players.size(),
+                        sampled.get(),
+                        tps,
+                        mspt,
+                        regionNanos.sum(),
+                        truncated.get()
+                ));
+            }
+        };
+
+        for (int i = 0; i < players.size(); i++) {
+            if (truncated.get() || (i % BUDGET_CHECK_INTERVAL == 0 && System.nanoTime() - start > budgetNanos)) {
+                truncated.set(true);
+                done.run();
+                continue;
+            }
+
+            Player player = players.get(i);
+            // Each ping is read on the region thread that owns the player.
+            boolean scheduled = scheduler.runOnEntity(player, () -> {
+                long taskStart = System.nanoTime();
+                try {
+                    pingHistogram.record(player.getPing());
+                    sampled.incrementAndGet();
+                } finally {
+                    regionNanos.add(System.nanoTime() - taskStart);
+                    done.run();
+                }
+            }, done);
+            if (!scheduled) {
+                done.run();
+            }
+        }
+
+        regionNanos.add(System.nanoTime() - start);
+        done.run();
+    }
+}
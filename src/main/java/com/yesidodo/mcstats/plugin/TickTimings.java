@@ -0,0 +1,135 @@
+package com.yesidodo.mcstats.plugin;
+
+import com.destroystokyo.paper.event.server.ServerTickEndEvent;
+import com.destroystokyo.paper.event.server.ServerTickStartEvent;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public final class TickTimings implements Listener, TelemetrySource {
+    private static final int HISTORY_TICKS = 1024;
+    private static final int BASELINE_TICKS = 100;
+    private static final int MAX_PENDING_SPIKES = 64;
+    private static final List<String> SPIKE_COLUMNS = List.of("durationMs", "baselineMs", "entities", "chunks", "tileEntities");
+    private static final List<String> SPIKE_TIMING_COLUMNS = List.of("durationMs", "baselineMs");
+
+    private final LatencyHistogram msptHistogram;
+    private final long spikeThresholdNanos;
+    // Null when world load tracking is off; spikes then carry timings only.
+    private final WorldLoadTracker worldLoad;
+    private final long[] durations = new long[HISTORY_TICKS];
+    private final ArrayDeque<TickSpike> spikes = new ArrayDeque<>();
+    private long recordedTicks;
+    private volatile long tickStartNanos;
+    private long spikeCount;
+
+    public TickTimings(LatencyHistogram msptHistogram, long spikeThresholdMs, WorldLoadTracker worldLoad) {
+        this.msptHistogram = msptHistogram;
+        this.worldLoad = worldLoad;
+        this.spikeThresholdNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1L, spikeThresholdMs));
+    }
+
+    @EventHandler(priority = EventPriority.LOWEST)
+    public void onTickStart(ServerTickStartEvent event) {
+        tickStartNanos = System.nanoTime();
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onTickEnd(ServerTickEndEvent event) {
+        if (tickStartNanos == 0L) {
+            return;
+        }
+
+        long duration = System.nanoTime() - tickStartNanos;
+        tickStartNanos = 0L;
+        msptHistogram.record(TimeUnit.NANOSECONDS.toMicros(duration));
+        if (duration >= spikeThresholdNanos) {
+            // Baseline is taken before this tick enters the history.
+            recordSpike(duration, baselineNanos());
+        }
+        durations[(int) (recordedTicks & (HISTORY_TICKS - 1))] = duration;
+        recordedTicks++;
+    }
+
+    // Main thread only: true once a tick start event has been seen.
+    public boolean receivesTickEvents() {
+        return tickStartNanos != 0L || recordedTicks > 0L;
+    }
+
+    public long currentTickNanos() {
+        long start = tickStartNanos;
+        return start == 0L ? 0L : System.nanoTime() - start;
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        sample.set(TelemetryFields.TICK_SPIKES, takeSpikeCount()).section(drainSpikes());
+    }
+
+    public TelemetrySection drainSpikes() {
+        List<TelemetryRow> rows;
+        synchronized (spikes) {
+            if (spikes.isEmpty()) {
+                return null;
+            }
+            rows = new ArrayList<>(spikes.size());
+            TickSpike spike;
+            while ((spike = spikes.poll()) != null) {
+                double durationMs = spike.durationNanos() / 1_000_000.0;
+                double baselineMs = spike.baselineNanos() / 1_000_000.0;
+                WorldLoadTracker.Totals load = spike.load();
+                rows.add(new TelemetryRow(Long.toString(spike.timestampMs()), load == null
+                        ? new double[]{durationMs, baselineMs}
+                        : new double[]{durationMs, baselineMs, load.entities(), load.chunks(), load.tileEntities()}));
+            }
+        }
+        return new TelemetrySection("tickSpikes", worldLoad == null ? SPIKE_TIMING_COLUMNS : SPIKE_COLUMNS, rows);
+    }
+
+    public long takeSpikeCount() {
+        synchronized (spikes) {
+            long count = spikeCount;
+            spikeCount = 0L;
+            return count;
+        }
+    }
+
+    private long baselineNanos() {
+        int count = (int) Math.min(BASELINE_TICKS, recordedTicks);
+        if (count == 0) {
+            return 0L;
+        }
+
+        long total = 0L;
+        for (int i = 1; i <= count; i++) {
+            total += durations[(int) ((recordedTicks - i) & (HISTORY_TICKS - 1))];
+        }
+        return total / count;
+    }
+
+    private void recordSpike(long durationNanos, long baselineNanos) {
+        // The world's own counts walk every loaded chunk or entity, which a tick that is already slow cannot afford.
+        WorldLoadTracker.Totals load = worldLoad == null ? null : worldLoad.totals();
+        TickSpike spike = new TickSpike(System.currentTimeMillis(), durationNanos, baselineNanos, load);
+        synchronized (spikes) {
+            if (spikes.size() == MAX_PENDING_SPIKES) {
+                spikes.poll();
+            }
+            spikes.offer(spike);
+            spikeCount++;
+        }
+    }
+
+    private record TickSpike(
+            long timestampMs,
+            long durationNanos,
+            long baselineNanos,
+            WorldLoadTracker.Totals load
+    ) {
+    }
+}
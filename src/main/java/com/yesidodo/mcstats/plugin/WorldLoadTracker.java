@@ -0,0 +1,425 @@
+package com.yesidodo.mcstats.plugin;
+
+import com.destroystokyo.paper.event.entity.EntityAddToWorldEvent;
+import com.destroystokyo.paper.event.entity.EntityRemoveFromWorldEvent;
+import org.bukkit.Chunk;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.block.Block;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.EntityType;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.world.ChunkLoadEvent;
+import org.bukkit.event.world.ChunkUnloadEvent;
+import org.bukkit.event.world.WorldUnloadEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Predicate;
+
+public final class WorldLoadTracker implements Listener, TelemetrySource {
+    private static final EntityType[] ENTITY_TYPES = EntityType.values();
+    private static final List<String> WORLD_COLUMNS = List.of("chunks", "entities", "tileEntities");
+    private static final List<String> TYPE_COLUMNS = List.of("count");
+    private static final List<String> CHUNK_COLUMNS = List.of("entities", "tileEntities");
+    private static final Comparator<HotChunk> BY_LOAD = Comparator.comparingInt(HotChunk::load);
+
+    private final ServerSchedulerCompat scheduler;
+    private final int topChunks;
+    private final long scanBudgetNanos;
+    private final int scanBatchChunks;
+    private final long scanPeriodNanos;
+    private final Map<String, WorldLoad> worlds = new ConcurrentHashMap<>();
+    // The rescan cursor is only touched from the scan task.
+    private Iterator<WorldLoad> worldCursor;
+    private WorldLoad cursorWorld;
+    private Iterator<Map.Entry<Long, ChunkLoad>> chunkCursor;
+    private long nextPassNanos;
+
+    public WorldLoadTracker(
+            ServerSchedulerCompat scheduler,
+            int topChunks,
+            long scanBudgetMicros,
+            int scanBatchChunks,
+            long scanPeriodSeconds
+    ) {
+        this.scheduler = scheduler;
+        this.topChunks = Math.max(0, topChunks);
+        this.scanBudgetNanos = TimeUnit.MICROSECONDS.toNanos(Math.max(1L, scanBudgetMicros));
+        this.scanBatchChunks = Math.max(1, scanBatchChunks);
+        this.scanPeriodNanos = TimeUnit.SECONDS.toNanos(Math.max(1L, scanPeriodSeconds));
+    }
+
+    public void seed(List<World> loadedWorlds) {
+        for (World world : loadedWorlds) {
+            WorldLoad load = worldLoad(world);
+            for (Chunk chunk : world.getLoadedChunks()) {
+                ChunkLoad chunkLoad = load.chunks.computeIfAbsent(chunkKey(chunk.getX(), chunk.getZ()), ignored -> new ChunkLoad());
+                chunkLoad.setTileEntities(load, countTileEntities(chunk));
+            }
+            for (Entity entity : world.getEntities()) {
+                onEntityAdded(load, entity);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityAdd(EntityAddToWorldEvent event) {
+        onEntityAdded(worldLoad(event.getWorld()), event.getEntity());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onEntityRemove(EntityRemoveFromWorldEvent event) {
+        WorldLoad load = worlds.get(event.getWorld().getName());
+        if (load == null) {
+            return;
+        }
+
+        Entity entity = event.getEntity();
+        int type = entity.getType().ordinal();
+        // World totals are the sum of the tracked chunks. An entity that left its chunk unseen is still counted where
+        // the rescan last found it, until that chunk is recounted or unloaded.
+        ChunkLoad chunk = load.chunks.get(chunkKey(entity.getLocation()));
+        if (chunk != null && chunk.count(type) > 0) {
+            chunk.adjust(type, -1);
+            chunk.entities--;
+            load.entityTypes.decrementAndGet(type);
+            load.entities.decrementAndGet();
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkLoad(ChunkLoadEvent event) {
+        Chunk chunk = event.getChunk();
+        WorldLoad world = worldLoad(event.getWorld());
+        ChunkLoad load = world.chunks.computeIfAbsent(chunkKey(chunk.getX(), chunk.getZ()), ignored -> new ChunkLoad());
+        load.setTileEntities(world, countTileEntities(chunk));
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onChunkUnload(ChunkUnloadEvent event) {
+        WorldLoad load = worlds.get(event.getWorld().getName());
+        if (load != null) {
+            Chunk chunk = event.getChunk();
+            ChunkLoad removed = load.chunks.remove(chunkKey(chunk.getX(), chunk.getZ()));
+            if (removed != null) {
+                removed.release(load);
+            }
+        }
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onWorldUnload(WorldUnloadEvent event) {
+        worlds.remove(event.getWorld().getName());
+    }
+
+    public void scanStep() {
+        // Events miss entities walking between chunks and block-placed tile entities; a slow rescan corrects both,
+        // along with the per-type totals built from the chunk counts.
+        long start = System.nanoTime();
+        if (!beginPass(start)) {
+            return;
+        }
+
+        long deadline = start + scanBudgetNanos;
+        do {
+            Map.Entry<Long, ChunkLoad> next = nextChunk();
+            if (next == null) {
+                return;
+            }
+            refresh(cursorWorld, next.getKey(), next.getValue());
+        } while (System.nanoTime() < deadline);
+    }
+
+    public void scheduleRegionScan() {
+        if (!beginPass(System.nanoTime())) {
+            return;
+        }
+
+        for (int i = 0; i < scanBatchChunks; i++) {
+            Map.Entry<Long, ChunkLoad> next = nextChunk();
+            if (next == null) {
+                return;
+            }
+            WorldLoad world = cursorWorld;
+            long key = next.getKey();
+            ChunkLoad chunk = next.getValue();
+            scheduler.runAtChunk(world.world, chunkX(key), chunkZ(key), () -> refresh(world, key, chunk));
+        }
+    }
+
+    // Cheap enough for a slow tick: no chunk or entity is visited.
+    public Totals totals() {
+        int entities = 0;
+        int chunks = 0;
+        int tileEntities = 0;
+        for (WorldLoad world : worlds.values()) {
+            entities += world.entities.get();
+            chunks += world.chunks.size();
+            tileEntities += world.tileEntities.get();
+        }
+        return new Totals(entities, chunks, tileEntities);
+    }
+
+    @Override
+    public void contribute(TelemetrySample.Builder sample) {
+        for (TelemetrySection section : snapshot()) {
+            sample.section(section);
+        }
+    }
+
+    public List<TelemetrySection> snapshot() {
+        List<TelemetryRow> worldRows = new ArrayList<>(worlds.size());
+        List<TelemetryRow> typeRows = new ArrayList<>();
+        PriorityQueue<HotChunk> hottest = new PriorityQueue<>(Math.max(1, topChunks), BY_LOAD);
+        for (WorldLoad world : worlds.values()) {
+            int entities = 0;
+            for (int i = 0; i < ENTITY_TYPES.length; i++) {
+                int count = world.entityTypes.get(i);
+                if (count > 0) {
+                    entities += count;
+                    typeRows.add(new TelemetryRow(world.name + "/" + ENTITY_TYPES[i].name(), new double[]{count}));
+                }
+            }
+
+            int chunks = 0;
+            int tileEntities = 0;
+            for (Map.Entry<Long, ChunkLoad> entry : world.chunks.entrySet()) {
+                ChunkLoad chunk = entry.getValue();
+                int chunkEntities = chunk.entities;
+                int chunkTileEntities = chunk.tileEntities;
+                chunks++;
+                tileEntities += chunkTileEntities;
+                offerHotChunk(hottest, world, entry.getKey(), chunkEntities, chunkTileEntities);
+            }
+            worldRows.add(new TelemetryRow(world.name, new double[]{chunks, entities, tileEntities}));
+        }
+
+        if (worldRows.isEmpty()) {
+            return List.of();
+        }
+        List<TelemetryRow> chunkRows = new ArrayList<>(hottest.size());
+        while (!hottest.isEmpty()) {
+            HotChunk chunk = hottest.poll();
+            chunkRows.add(0, new TelemetryRow(
+                    chunk.world() + "/" + chunkX(chunk.key()) + "," + chunkZ(chunk.key()),
+                    new double[]{chunk.entities(), chunk.tileEntities()}
+            ));
+        }
+        return List.of(
+                new TelemetrySection("worlds", WORLD_COLUMNS, worldRows),
+                new TelemetrySection("entityTypes", TYPE_COLUMNS, typeRows),
+                new TelemetrySection("hotChunks", CHUNK_COLUMNS, chunkRows)
+        );
+    }
+
+    private void offerHotChunk(PriorityQueue<HotChunk> hottest, WorldLoad world, long key, int entities, int tileEntities) {
+        if (topChunks == 0 || entities + tileEntities == 0) {
+            return;
+        }
+        if (hottest.size() == topChunks) {
+            if (hottest.peek().load() >= entities + tileEntities) {
+                return;
+            }
+            hottest.poll();
+        }
+        hottest.offer(new HotChunk(world.name, key, entities, tileEntities));
+    }
+
+    private void onEntityAdded(WorldLoad load, Entity entity) {
+        int type = entity.getType().ordinal();
+        // Entity and chunk events for one chunk arrive on its owning thread, so chunk counters have a single writer.
+        ChunkLoad chunk = load.chunks.computeIfAbsent(chunkKey(entity.getLocation()), ignored -> new ChunkLoad());
+        chunk.adjust(type, 1);
+        chunk.entities++;
+        load.entityTypes.incrementAndGet(type);
+        load.entities.incrementAndGet();
+    }
+
+    private boolean beginPass(long now) {
+        if (chunkCursor != null) {
+            return true;
+        }
+        if (now < nextPassNanos) {
+            return false;
+        }
+        nextPassNanos = now + scanPeriodNanos;
+        worldCursor = worlds.values().iterator();
+        cursorWorld = null;
+        chunkCursor = null;
+        return true;
+    }
+
+    private Map.Entry<Long, ChunkLoad> nextChunk() {
+        while (chunkCursor == null || !chunkCursor.hasNext()) {
+            if (worldCursor == null || !worldCursor.hasNext()) {
+                worldCursor = null;
+                cursorWorld = null;
+                chunkCursor = null;
+                return null;
+            }
+            cursorWorld = worldCursor.next();
+            chunkCursor = cursorWorld.chunks.entrySet().iterator();
+        }
+        return chunkCursor.next();
+    }
+
+    private static void refresh(WorldLoad world, long key, ChunkLoad load) {
+        int x = chunkX(key);
+        int z = chunkZ(key);
+        if (!world.world.isChunkLoaded(x, z)) {
+            if (world.chunks.remove(key, load)) {
+                load.release(world);
+            }
+            return;
+        }
+
+        Chunk chunk = world.world.getChunkAt(x, z);
+        load.recount(world, chunk.getEntities());
+        load.setTileEntities(world, countTileEntities(chunk));
+    }
+
+    private static int countTileEntities(Chunk chunk) {
+        // Counted in the block filter, which rejects everything, so no block state snapshots or array are built.
+        TileEntityCounter counter = new TileEntityCounter();
+        chunk.getTileEntities(counter, false);
+        return counter.count;
+    }
+
+    private WorldLoad worldLoad(World world) {
+        return worlds.computeIfAbsent(world.getName(), name -> new WorldLoad(name, world));
+    }
+
+    private static long chunkKey(Location location) {
+        return chunkKey(location.getBlockX() >> 4, location.getBlockZ() >> 4);
+    }
+
+    private static long chunkKey(int x, int z) {
+        return ((long) z << 32) | (x & 0xFFFFFFFFL);
+    }
+
+    private static int chunkX(long key) {
+        return (int) key;
+    }
+
+    private static int chunkZ(long key) {
+        return (int) (key >>> 32);
+    }
+
+    private static final class WorldLoad {
+        private final String name;
+        private final World world;
+        private final AtomicIntegerArray entityTypes = new AtomicIntegerArray(ENTITY_TYPES.length);
+        // Running sums of the chunk counts, so totals() costs one read per world.
+        private final AtomicInteger entities = new AtomicInteger();
+        private final AtomicInteger tileEntities = new AtomicInteger();
+        private final Map<Long, ChunkLoad> chunks = new ConcurrentHashMap<>();
+
+        private WorldLoad(String name, World world) {
+            this.name = name;
+            this.world = world;
+        }
+    }
+
+    private static final class ChunkLoad {
+        private volatile int entities;
+        private volatile int tileEntities;
+        // Entities by type as parallel arrays of type ordinal and count; only touched on the chunk's owning thread.
+        // Entries are appended and never reordered.
+        private short[] typeOrdinals;
+        private int[] typeCounts;
+        private int distinctTypes;
+
+        private int count(int type) {
+            for (int i = 0; i < distinctTypes; i++) {
+                if (typeOrdinals[i] == type) {
+                    return typeCounts[i];
+                }
+            }
+            return 0;
+        }
+
+        private void adjust(int type, int delta) {
+            for (int i = 0; i < distinctTypes; i++) {
+                if (typeOrdinals[i] == type) {
+                    typeCounts[i] += delta;
+                    return;
+                }
+            }
+            if (typeOrdinals == null) {
+                typeOrdinals = new short[4];
+                typeCounts = new int[4];
+            } else if (distinctTypes == typeOrdinals.length) {
+                typeOrdinals = Arrays.copyOf(typeOrdinals, distinctTypes * 2);
+                typeCounts = Arrays.copyOf(typeCounts, distinctTypes * 2);
+            }
+            typeOrdinals[distinctTypes] = (short) type;
+            typeCounts[distinctTypes++] = delta;
+        }
+
+        // Replaces the counts with what the chunk holds now and moves the world totals by the difference only.
+        private void recount(WorldLoad world, Entity[] found) {
+            int previousTypes = distinctTypes;
+            int[] previous = previousTypes == 0 ? null : Arrays.copyOf(typeCounts, previousTypes);
+            for (int i = 0; i < previousTypes; i++) {
+                typeCounts[i] = 0;
+            }
+            for (Entity entity : found) {
+                adjust(entity.getType().ordinal(), 1);
+            }
+            for (int i = 0; i < distinctTypes; i++) {
+                int difference = typeCounts[i] - (i < previousTypes ? previous[i] : 0);
+                if (difference != 0) {
+                    world.entityTypes.addAndGet(typeOrdinals[i], difference);
+                }
+            }
+            world.entities.addAndGet(found.length - entities);
+            entities = found.length;
+        }
+
+        private void setTileEntities(WorldLoad world, int count) {
+            world.tileEntities.addAndGet(count - tileEntities);
+            tileEntities = count;
+        }
+
+        private void release(WorldLoad world) {
+            world.entities.addAndGet(-entities);
+            world.tileEntities.addAndGet(-tileEntities);
+            for (int i = 0; i < distinctTypes; i++) {
+                if (typeCounts[i] != 0) {
+                    world.entityTypes.addAndGet(typeOrdinals[i], -typeCounts[i]);
+                }
+            }
+        }
+    }
+
+    private static final class TileEntityCounter implements Predicate<Block> {
+        private int count;
+
+        @Override
+        public boolean test(Block block) {
+            count++;
+            return false;
+        }
+    }
+
+    public record Totals(int entities, int chunks, int tileEntities) {
+    }
+
+    private record HotChunk(String world, long key, int entities, int tileEntities) {
+        private int load() {
+            return entities + tileEntities;
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BinaryBatchCodecTest {
+    private static final UUID ALICE = UUID.fromString("00000000-0000-0001-0000-000000000001");
+    private static final UUID BOB = UUID.fromString("ffffffff-ffff-ffff-8000-000000000000");
+
+    @Test
+    void eventsRoundTripVarintAndZigzagEdges() throws IOException {
+        StatDictionary dictionary = new StatDictionary();
+        int alice = dictionary.player(ALICE);
+        int blocks = dictionary.metric("blocks_broken");
+        long[] deltas = {1L, -1L, 63L, -64L, 64L, 127L, 128L, 16_383L, 16_384L, Integer.MAX_VALUE, Integer.MIN_VALUE,
+                Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE - 1L, Long.MIN_VALUE + 1L};
+        // Timestamps jump backwards as well as forwards, and across the whole long range.
+        long[] timestamps = {1_700_000_000L, 1_699_999_999L, 0L, -1L, Long.MAX_VALUE, Long.MIN_VALUE, 1_700_000_000L};
+        List<StatEvent> events = new ArrayList<>();
+        for (int i = 0; i < deltas.length; i++) {
+            events.add(new StatEvent(alice, blocks, deltas[i], timestamps[i % timestamps.length]));
+        }
+
+        assertEquals(events, decode(encode(events, dictionary), new StatDictionary(), dictionary));
+    }
+
+    @Test
+    void eventsShareOneDictionaryEntryPerPlayerAndMetric() throws IOException {
+        StatDictionary dictionary = new StatDictionary();
+        int alice = dictionary.player(ALICE);
+        int bob = dictionary.player(BOB);
+        int kills = dictionary.metric("mob_kills");
+        int chat = dictionary.metric("chat_messages \"quoted\" ünïcode");
+        List<StatEvent> events = List.of(
+                new StatEvent(alice, kills, 2L, 100L),
+                new StatEvent(bob, chat, 1L, 100L),
+                new StatEvent(alice, chat, 5L, 101L),
+                new StatEvent(bob, kills, 7L, 99L)
+        );
+        PayloadBuffer all = encode(events, dictionary);
+        StatDictionary decoder = new StatDictionary();
+        assertEquals(events, decode(all, decoder, dictionary));
+        assertEquals(ALICE, decoder.uuid(decoder.player(ALICE)));
+        assertNull(decoder.serverId(decoder.player(BOB)));
+    }
+
+    @Test
+    void repeatedEventsCostOnlyTheirIndexes() {
+        StatDictionary dictionary = new StatDictionary();
+        StatEvent event = new StatEvent(dictionary.player(ALICE), dictionary.metric("distance_cm"), 1L, 1_700_000_000L);
+        PayloadBuffer one = encode(List.of(event), dictionary);
+        PayloadBuffer hundred = encode(Collections.nCopies(100, event), dictionary);
+
+        // Player index, metric index, delta and a zero timestamp delta: one byte each, no repeated UUID or name.
+        assertEquals(99 * 4, hundred.size() - one.size());
+    }
+
+    @Test
+    void emptyEventBatchRoundTrips() throws IOException {
+        StatDictionary dictionary = new StatDictionary();
+        assertEquals(List.of(), decode(encode(List.of(), dictionary), new StatDictionary(), dictionary));
+    }
+
+    @Test
+    void eventsKeepTheirOriginServer() throws IOException {
+        StatDictionary dictionary = new StatDictionary();
+        int local = dictionary.player(ALICE);
+        int relayed = dictionary.player("survival-2", ALICE);
+        int metric = dictionary.metric("blocks_placed");
+        List<StatEvent> events = List.of(new StatEvent(local, metric, 1L, 10L), new StatEvent(relayed, metric, 2L, 10L));
+
+        PayloadBuffer out = new PayloadBuffer(64);
+        BinaryBatchCodec.writeEvents(out, events, dictionary, null);
+        StatDictionary decoder = new StatDictionary();
+        List<StatEvent> decoded = BinaryBatchCodec.readEvents(out.array(), 0, out.size(), decoder);
+
+        assertEquals(2, decoded.size());
+        assertNull(decoder.serverId(decoded.get(0).playerId()));
+        assertEquals("survival-2", decoder.serverId(decoded.get(1).playerId()));
+        assertEquals(ALICE, decoder.uuid(decoded.get(1).playerId()));
+        assertEquals(2L, decoded.get(1).delta());
+    }
+
+    @Test
+    void telemetryRoundTripsPresenceBitmapAndSections() throws IOException {
+        TelemetrySection chunks = new TelemetrySection(
+                "worlds",
+                List.of("loadedChunks", "entities"),
+                List.of(new TelemetryRow("world", new double[]{441.0, 1_200.0}), new TelemetryRow("world_nether", new double[]{0.0, -0.5}))
+        );
+        TelemetrySample full = TelemetrySample.builder("lobby", 1_700_000_000L)
+                .set(TelemetryFields.TPS, 19.97)
+                .set(TelemetryFields.ONLINE_PLAYERS, Integer.MIN_VALUE)
+                .set(TelemetryFields.THREAD_COUNT, Integer.MAX_VALUE)
+                .set(TelemetryFields.DROPPED_EVENTS, Long.MAX_VALUE)
+                .set(TelemetryFields.RETRIED_BATCHES, Long.MIN_VALUE)
+                .set(TelemetryFields.ALL.get(TelemetryFields.ALL.size() - 1), 3L)
+                .section(chunks)
+                .build();
+        // Nothing set: every presence bit is clear and no sections follow.
+        TelemetrySample empty = TelemetrySample.builder("survival", 1_699_999_990L).build();
+        // Only the highest fields set, so the last presence byte is the only non-zero one.
+        TelemetrySample sparse = TelemetrySample.builder("lobby", 1_700_000_005L)
+                .set(TelemetryFields.ALL.get(TelemetryFields.ALL.size() - 2), 0.0)
+                .set(TelemetryFields.ALL.get(TelemetryFields.ALL.size() - 1), 0L)
+                .build();
+        List<TelemetrySample> samples = List.of(full, empty, sparse);
+
+        PayloadBuffer out = new PayloadBuffer(64);
+        BinaryBatchCodec.writeTelemetry(out, samples);
+        List<TelemetrySample> decoded = BinaryBatchCodec.readTelemetry(out.array(), 0, out.size());
+
+        assertEquals(samples.size(), decoded.size());
+        for (int i = 0; i < samples.size(); i++) {
+            TelemetrySample expected = samples.get(i);
+            TelemetrySample actual = decoded.get(i);
+            assertEquals(expected.serverId(), actual.serverId());
+            assertEquals(expected.timestampUtc(), actual.timestampUtc());
+            assertArrayEquals(expected.values(), actual.values(), "values of sample " + i);
+            assertEquals(expected.sections(), actual.sections());
+        }
+        assertNull(decoded.get(0).get(TelemetryFields.CIRCUIT_STATE));
+        assertTrue(Arrays.stream(decoded.get(1).values()).allMatch(value -> value == null));
+    }
+
+    @Test
+    void truncatedBatchesAreRejected() {
+        StatDictionary dictionary = new StatDictionary();
+        List<StatEvent> events = List.of(new StatEvent(dictionary.player(ALICE), dictionary.metric("deaths"), 1L, 1L));
+        PayloadBuffer out = encode(events, dictionary);
+
+        for (int length = 0; length < out.size(); length++) {
+            int cut = length;
+            assertThrows(IOException.class, () -> BinaryBatchCodec.readEvents(out.array(), 0, cut, new StatDictionary()),
+                    "accepted a batch cut to " + cut + " bytes");
+        }
+        assertThrows(IOException.class, () -> BinaryBatchCodec.readTelemetry(out.array(), 0, out.size()));
+    }
+
+    private static PayloadBuffer encode(List<StatEvent> events, StatDictionary dictionary) {
+        PayloadBuffer out = new PayloadBuffer(64);
+        BinaryBatchCodec.writeEvents(out, events, dictionary, null);
+        return out;
+    }
+
+    // Maps the decoded ids back to the encoder's, so whole events can be compared.
+    private static List<StatEvent> decode(PayloadBuffer in, StatDictionary decoder, StatDictionary encoder) throws IOException {
+        return BinaryBatchCodec.readEvents(in.array(), 0, in.size(), decoder).stream()
+                .map(event -> new StatEvent(
+                        encoder.player(decoder.uuid(event.playerId())),
+                        encoder.metric(decoder.metricName(event.metricId())),
+                        event.delta(),
+                        event.timestampUtc()
+                ))
+                .toList();
+    }
+}
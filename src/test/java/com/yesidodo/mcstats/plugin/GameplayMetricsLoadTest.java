@@ -0,0 +1,189 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+import org.bukkit.event.Event;
+import org.bukkit.event.EventException;
+import org.bukkit.event.block.BlockBreakEvent;
+import org.bukkit.event.player.PlayerMoveEvent;
+import org.bukkit.plugin.EventExecutor;
+import org.bukkit.plugin.PluginManager;
+import org.junit.jupiter.api.Test;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Synthetic load on the gameplay counters: correctness under volume and concurrency. GameplayMetricsBenchmark times it.
+class GameplayMetricsLoadTest {
+    private static final int EVENTS = 1_000_000;
+
+    // Timing lives in GameplayMetricsBenchmark; this checks that the same path loses nothing under a million events.
+    @Test
+    void millionEventsThroughTheRegisteredHandlers() throws EventException {
+        StatsQueue queue = queue();
+        PlayerSlots slots = new PlayerSlots(256, queue.dictionary());
+        GameplayMetrics metrics = metrics(queue, slots);
+        Map<Class<? extends Event>, EventExecutor> executors = register(metrics);
+        Player[] players = players(200);
+        for (Player player : players) {
+            slots.assign(player.getUniqueId());
+        }
+
+        EventExecutor move = executors.get(PlayerMoveEvent.class);
+        EventExecutor blockBreak = executors.get(BlockBreakEvent.class);
+        // 1.2 and 1.6 blocks across: 2 blocks, or 200 cm, per move.
+        Location from = new Location(null, 0.0, 64.0, 0.0);
+        Location to = new Location(null, 1.2, 64.0, 1.6);
+        for (int i = 0; i < EVENTS; i++) {
+            Player player = players[i % players.length];
+            if ((i & 1) == 0) {
+                move.execute(metrics, new PlayerMoveEvent(player, from, to));
+            } else {
+                // The handler never looks at the block.
+                blockBreak.execute(metrics, new BlockBreakEvent(null, player));
+            }
+        }
+        metrics.flush();
+
+        Map<String, Long> totals = new HashMap<>();
+        for (StatEvent event : drainAll(queue)) {
+            totals.merge(queue.dictionary().metricName(event.metricId()), event.delta(), Long::sum);
+        }
+        assertEquals(EVENTS / 2 * 200L, totals.get("distance_cm").longValue());
+        assertEquals(EVENTS / 2L, totals.get("blocks_broken").longValue());
+    }
+
+    @Test
+    void countsSurviveConcurrentQuitsAndRejoins() throws InterruptedException {
+        StatsQueue queue = queue();
+        // Fewer slots than players, so slots change hands and some adds take the overflow path. Counts are checked per
+        // UUID, so a flush that credits one player's counts to a slot's next owner fails the test.
+        PlayerSlots slots = new PlayerSlots(8, queue.dictionary());
+        GameplayMetrics metrics = metrics(queue, slots);
+        Player[] players = players(12);
+        AtomicLongArray added = new AtomicLongArray(players.length);
+        AtomicBoolean running = new AtomicBoolean(true);
+
+        // The periodic flush runs alongside, as on the plugin's flusher thread.
+        Thread flusher = Thread.ofPlatform().start(() -> {
+            while (running.get()) {
+                metrics.flush();
+            }
+        });
+        Thread[] writers = new Thread[4];
+        for (int i = 0; i < writers.length; i++) {
+            writers[i] = Thread.ofPlatform().start(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (running.get()) {
+                    int player = random.nextInt(players.length);
+                    metrics.add(players[player], random.nextInt(2), 1L);
+                    added.incrementAndGet(player);
+                }
+            });
+        }
+        // Joins and quits in the order SessionTracker uses.
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500L);
+        while (System.nanoTime() < deadline) {
+            UUID uuid = players[random.nextInt(players.length)].getUniqueId();
+            if (slots.slotOf(uuid) < 0) {
+                slots.assign(uuid);
+            } else {
+                quit(slots, metrics, uuid);
+            }
+        }
+        running.set(false);
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        flusher.join();
+        for (Player player : players) {
+            quit(slots, metrics, player.getUniqueId());
+        }
+
+        Map<UUID, Long> counted = new HashMap<>();
+        for (StatEvent event : drainAll(queue)) {
+            counted.merge(queue.dictionary().uuid(event.playerId()), event.delta(), Long::sum);
+        }
+        for (int i = 0; i < players.length; i++) {
+            assertEquals(added.get(i), counted.getOrDefault(players[i].getUniqueId(), 0L).longValue(), "player " + i);
+        }
+    }
+
+    private static void quit(PlayerSlots slots, GameplayMetrics metrics, UUID uuid) {
+        int slot = slots.retire(uuid);
+        if (slot >= 0) {
+            metrics.flushSlot(slot);
+            slots.free(slot);
+        }
+    }
+
+    private static List<StatEvent> drainAll(StatsQueue queue) {
+        List<StatEvent> events = new ArrayList<>();
+        List<StatEvent> batch;
+        while (!(batch = queue.drain(4096)).isEmpty()) {
+            events.addAll(batch);
+        }
+        return events;
+    }
+
+    // Captures the executor registered for each event type, as the plugin manager would call it.
+    private static Map<Class<? extends Event>, EventExecutor> register(GameplayMetrics metrics) {
+        Map<Class<? extends Event>, EventExecutor> executors = new HashMap<>();
+        PluginManager pluginManager = (PluginManager) Proxy.newProxyInstance(
+                PluginManager.class.getClassLoader(),
+                new Class<?>[]{PluginManager.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("registerEvent")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    @SuppressWarnings("unchecked")
+                    Class<? extends Event> type = (Class<? extends Event>) args[0];
+                    executors.put(type, (EventExecutor) args[3]);
+                    return null;
+                }
+        );
+        metrics.register(null, pluginManager);
+        return executors;
+    }
+
+    private static StatsQueue queue() {
+        return new StatsQueue(1 << 16, OverflowPolicy.COALESCE, true, Set.of(), new StatDictionary());
+    }
+
+    private static GameplayMetrics metrics(StatsQueue queue, PlayerSlots slots) {
+        return new GameplayMetrics(queue, slots, List.of(
+                new GameplayMetrics.Binding(GameplaySource.BLOCK_BREAK, "blocks_broken"),
+                new GameplayMetrics.Binding(GameplaySource.MOVE, "distance_cm")
+        ));
+    }
+
+    private static Player[] players(int count) {
+        Player[] players = new Player[count];
+        for (int i = 0; i < count; i++) {
+            UUID uuid = new UUID(0L, i + 1L);
+            players[i] = (Player) Proxy.newProxyInstance(
+                    Player.class.getClassLoader(),
+                    new Class<?>[]{Player.class},
+                    (proxy, method, args) -> switch (method.getName()) {
+                        case "getUniqueId" -> uuid;
+                        case "hashCode" -> uuid.hashCode();
+                        case "equals" -> proxy == args[0];
+                        default -> throw new UnsupportedOperationException(method.getName());
+                    }
+            );
+        }
+        return players;
+    }
+}
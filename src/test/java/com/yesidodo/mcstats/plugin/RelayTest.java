@@ -0,0 +1,114 @@
+package com.yesidodo.mcstats.plugin;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+// Backend → relay → API over real sockets, with LocalIngestServer standing in for the API.
+class RelayTest {
+    private static final Logger LOGGER = Logger.getLogger("MCStatsRelayTest");
+    private static final UUID PLAYER = UUID.fromString("6f1c2a9e-0000-4000-8000-000000000001");
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void forwardsOverTcp() throws Exception {
+        int port;
+        try (ServerSocket probe = new ServerSocket(0)) {
+            port = probe.getLocalPort();
+        }
+        relayTwoBackends(new InetSocketAddress("127.0.0.1", port));
+    }
+
+    @Test
+    void forwardsOverUnixDomainSocket() throws Exception {
+        relayTwoBackends(UnixDomainSocketAddress.of(directory.resolve("relay.sock")));
+    }
+
+    // Both backends report the same player and metric: the relay merges each backend's events into one, but never
+    // merges across backends, and every event reaches the API under the backend it came from.
+    private void relayTwoBackends(SocketAddress address) throws Exception {
+        LocalIngestServer ingest = new LocalIngestServer(LOGGER, new InetSocketAddress("127.0.0.1", 0));
+        ingest.start();
+        PluginExecutor executor = new PluginExecutor("MCStats-RelayTest");
+        StatDictionary relayDictionary = new StatDictionary();
+        McStatsApiClient upstream = new McStatsApiClient(
+                "http://127.0.0.1:" + ingest.address().getPort(),
+                5000,
+                false,
+                McStatsApiClient.Compression.GZIP,
+                0,
+                true,
+                relayDictionary,
+                "relay",
+                "key",
+                "secret",
+                executor
+        );
+        Relay relay = new Relay(
+                LOGGER,
+                executor,
+                address,
+                relayDictionary,
+                upstream,
+                new CircuitBreaker(5, 100L, 1000L),
+                1024,
+                64,
+                Set.of(),
+                null,
+                1024L * 1024L,
+                100,
+                100,
+                2,
+                1000L,
+                60_000L
+        );
+        relay.start();
+        try {
+            send(address, "lobby", 1L, 2L, 3L);
+            send(address, "survival", 10L, 20L, 30L);
+        } finally {
+            relay.close(5000L);
+            executor.shutdown(1000L);
+            ingest.stop();
+        }
+
+        assertEquals(1L, ingest.events("lobby"));
+        assertEquals(6L, ingest.deltaTotal("lobby"));
+        assertEquals(1L, ingest.events("survival"));
+        assertEquals(60L, ingest.deltaTotal("survival"));
+        assertEquals(0L, ingest.events("relay"));
+        assertEquals(2L, ingest.samples());
+    }
+
+    private static void send(SocketAddress address, String serverId, long... deltas) throws Exception {
+        StatDictionary dictionary = new StatDictionary();
+        int player = dictionary.player(PLAYER);
+        int metric = dictionary.metric("blocks_broken");
+        try (RelayClient client = new RelayClient(address, dictionary, serverId)) {
+            for (int i = 0; i < deltas.length; i++) {
+                assertDelivered(client.sendEventsBatch(List.of(new StatEvent(player, metric, deltas[i], 1_700_000_000L + i)), i));
+            }
+            TelemetrySample sample = TelemetrySample.builder(serverId, 1_700_000_000L).set(TelemetryFields.TPS, 20.0).build();
+            assertDelivered(client.sendTelemetryBatch(List.of(sample), deltas.length));
+        }
+    }
+
+    private static void assertDelivered(CompletableFuture<DeliveryResult> result) throws Exception {
+        assertEquals(DeliveryResult.Outcome.DELIVERED, result.get(5L, TimeUnit.SECONDS).outcome());
+    }
+}